@@ -27,6 +27,7 @@ import com.hermes.exceptions.InvalidFilesException;
 import com.hermes.exceptions.InvalidOperationException;
 import com.hermes.exceptions.NotAuthorizedException;
 import com.hermes.exceptions.NotFoundException;
+import com.hermes.exceptions.TooManyRequestsException;
 import com.hermes.exceptions.UploadFailedException;
 
 import java.util.Map;
@@ -100,7 +101,8 @@ class GlobalExceptionHandler {
   public Map<String, Object> handleInvalidFilesException(final InvalidFilesException exception) {
     return Map.of(
       "message", "Invalid file IDs provided.",
-      "code", HttpStatus.BAD_REQUEST
+      "code", HttpStatus.BAD_REQUEST,
+      "invalidFileIds", exception.getInvalidFileIds()
     );
   }
 
@@ -144,6 +146,16 @@ class GlobalExceptionHandler {
     );
   }
 
+  @ExceptionHandler(TooManyRequestsException.class)
+  @ResponseBody
+  @ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+  public Map<String, Object> handleTooManyRequestsException(final TooManyRequestsException exception) {
+    return Map.of(
+      "message", exception.getMessage(),
+      "code", HttpStatus.TOO_MANY_REQUESTS
+    );
+  }
+
   @ExceptionHandler(IllegalArgumentException.class)
   @ResponseBody
   @ResponseStatus(HttpStatus.BAD_REQUEST)
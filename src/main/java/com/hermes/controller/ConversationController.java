@@ -16,11 +16,18 @@
 package com.hermes.controller;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
 
+import com.hermes.data.ConversationSummary;
+import com.hermes.data.CursorPagedResult;
+import com.hermes.data.QueryRunEvent;
+import com.hermes.data.StreamOptions;
 import com.hermes.model.Conversation;
 import com.hermes.model.Index;
 import com.hermes.service.ConversationService;
+import com.hermes.service.QueryService;
 
 import reactor.core.publisher.Mono;
 import reactor.core.publisher.Flux;
@@ -35,17 +42,34 @@ public class ConversationController {
   @Autowired
   private ConversationService conversationService;
 
+  @Autowired
+  private QueryService queryService;
+
   @GetMapping
   public Flux<Conversation> getAllConversations(final Principal principal) {
     return conversationService.getAllConversations(principal.getName());
   }
 
+  @GetMapping("/summaries")
+  public Mono<CursorPagedResult<ConversationSummary>> getConversationSummaries(
+  @RequestParam(required = false) final String cursor,
+  @RequestParam(defaultValue = "20") final int size,
+  final Principal principal) {
+    return conversationService.getConversationSummaries(principal.getName(), cursor, size);
+  }
+
   @GetMapping("/{conversationId}")
   public Mono<Conversation> getConversationById(@PathVariable final String conversationId,
   final Principal principal) {
     return conversationService.getConversationById(conversationId, principal.getName());
   }
 
+  @GetMapping(value = "/{conversationId}/live", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public Flux<ServerSentEvent<QueryRunEvent>> watchConversation(@PathVariable final String conversationId,
+  final StreamOptions options, final Principal principal) {
+    return queryService.watchConversation(conversationId, principal.getName(), options);
+  }
+
   @DeleteMapping("/{conversationId}")
   public Mono<String> deleteConversation(@PathVariable final String conversationId, final Principal principal) {
     return conversationService.deleteConversation(conversationId, principal.getName());
@@ -17,7 +17,6 @@ package com.hermes.controller;
 
 import java.security.Principal;
 import java.time.LocalDate;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -39,7 +38,9 @@ import org.springframework.web.server.ResponseStatusException;
 import com.hermes.data.DateComparator;
 import com.hermes.data.FileStatus;
 import com.hermes.data.PagedResult;
+import com.hermes.data.UploadResult;
 import com.hermes.exceptions.InvalidOperationException;
+import com.hermes.exceptions.UploadFailedException;
 import com.hermes.service.FileService;
 
 import io.swagger.v3.oas.annotations.Operation;
@@ -58,19 +59,35 @@ public class FileController {
     summary = "Upload files",
     description = "Uploads up to 10 files to Google Cloud Storage"
   )
-  public String uploadFiles(@RequestParam final List<MultipartFile> files, final Principal principal) {
+  public Mono<String> uploadFiles(@RequestParam final List<MultipartFile> files, final Principal principal) {
 
-    if (files.size() > 10) {
-      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "You can only upload a maximum of 10 files at a time.");
-    }
+    checkFileCount(files);
 
-    final String userId = principal.getName();
-    final List<String> uploadedFiles = new ArrayList<>();
-    for (MultipartFile file: files) {
-      uploadedFiles.add(fileService.uploadFile(file, userId).block());
-    }
+    return fileService.uploadFiles(files, principal.getName())
+      .collectList()
+      .flatMap(results -> {
+
+        final List<String> uploadedFiles = results.stream().filter(UploadResult::isSuccess).map(UploadResult::getName).toList(),
+        failedFiles = results.stream().filter(r -> !r.isSuccess()).map(UploadResult::getOriginalName).toList();
 
-    return "Files uploaded successfully: " + String.join(", ", uploadedFiles);
+        if (uploadedFiles.isEmpty()) {
+          return Mono.error(new UploadFailedException("No file was uploaded: " + String.join(", ", failedFiles)));
+        }
+
+        return Mono.just("Files uploaded successfully: " + String.join(", ", uploadedFiles)
+          + (failedFiles.isEmpty() ? "" : ". Failed: " + String.join(", ", failedFiles)));
+      });
+  }
+
+  @PostMapping(value = "/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE, produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  @Operation(
+    summary = "Upload files with progress",
+    description = "Uploads up to 10 files to Google Cloud Storage, streaming the result of each file as soon as it's done"
+  )
+  public Flux<UploadResult> uploadFilesWithProgress(@RequestParam final List<MultipartFile> files, final Principal principal) {
+
+    checkFileCount(files);
+    return fileService.uploadFiles(files, principal.getName());
   }
 
   @GetMapping("/list")
@@ -102,4 +119,11 @@ public class FileController {
     return fileService.deleteFile(fileId, principal.getName())
       .onErrorResume(e -> Mono.error(new InvalidOperationException("Error deleting file: " + e.getMessage())));
   }
+
+  private void checkFileCount(final List<MultipartFile> files) {
+
+    if (files.size() > 10) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "You can only upload a maximum of 10 files at a time.");
+    }
+  }
 }
@@ -61,8 +61,9 @@ public class IndexController {
   @RequestParam(defaultValue = "DESC") final Direction direction,
   @RequestParam(defaultValue = "0") final int page,
   @RequestParam(defaultValue = "10") final int size,
+  @RequestParam(required = false) final String cursor,
   final Principal principal) {
-    return indexService.filter(principal.getName(), targetId, q, isPublicPath, date, dateCmp, state, direction, page, size);
+    return indexService.filter(principal.getName(), targetId, q, isPublicPath, date, dateCmp, state, direction, page, size, cursor);
   }
 
   @PostMapping("/create")
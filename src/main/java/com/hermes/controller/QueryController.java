@@ -16,125 +16,56 @@
 package com.hermes.controller;
 
 import com.hermes.data.QueryRequest;
-import com.hermes.model.Conversation;
-import com.hermes.service.ConversationService;
+import com.hermes.data.QueryRunEvent;
+import com.hermes.data.StreamOptions;
+import com.hermes.exceptions.TooManyRequestsException;
+import com.hermes.model.QueryJob;
+import com.hermes.service.QueryService;
 
-import lombok.extern.slf4j.Slf4j;
-
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.security.Principal;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
 
 @RestController
 @RequestMapping("/api/hermes")
-@Slf4j
 public class QueryController {
 
-  private ConversationService conversationService;
-  private final WebClient webClient;
-
-  @Value("${hermes.processor.url}")
-  private String processorUrl;
+  private final QueryService queryService;
 
-  public QueryController(WebClient.Builder webClientBuilder, ConversationService conversationService) {
-    this.webClient = webClientBuilder.build();
-    this.conversationService = conversationService;
+  public QueryController(final QueryService queryService) {
+    this.queryService = queryService;
   }
 
   @PostMapping(value = "/query", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-  public Flux<Map<String, Object>> handleQuery(@RequestBody final QueryRequest queryRequest, final Principal principal) {
-
-    // Validate request parameters
-    if (queryRequest.getQuestion() == null || queryRequest.getQuestion().isEmpty()) {
-      log.warn("Request validation failed: question is required");
-      return Flux.error(new IllegalArgumentException("Question is required."));
-    }
-
-    if (queryRequest.getIndexes() == null || queryRequest.getIndexes().size() == 0) {
-      log.warn("Empty indexes received.");
-    }
-
-    final Mono<Conversation> conversationMono =
-      (queryRequest.getConversationId() == null || queryRequest.getConversationId().isEmpty())
-      ? conversationService.createNewConversation(principal.getName(), queryRequest.getIndexes())
-      : conversationService.getConversationById(queryRequest.getConversationId());
-
-    return conversationMono
-      .switchIfEmpty(Mono.error(new IllegalArgumentException("Conversation not found")))
-      .flatMapMany(conversation -> {
-
-        if(!conversation.getUserId().equals(principal.getName())) {
-          log.warn("Unauthorized access: User {} is not authorized to access conversation {}", principal.getName(), conversation.getId());
-          return Mono.error(new IllegalArgumentException("Unauthorized access"));
-        }
-
-        // Prepare payload for Python Processor
-        final Map<String, Object> processorPayload = new HashMap<>();
-        processorPayload.put("conversationId", conversation.getId());
-        processorPayload.put("userId", principal.getName());
-        processorPayload.put("history", conversation.getHistory());
-        processorPayload.put("newQuestion", queryRequest.getQuestion());
-        processorPayload.put("indexes", conversation.getCollections());
-
-        log.info("Sending request to processor for conversation [{}]", conversation.getId());
-
-        // Call Python Processor (Streaming Response)
-        return webClient
-          .post()
-          .uri(processorUrl + "/processor/query")
-          .bodyValue(processorPayload)
-          .retrieve()
-          .bodyToFlux(new ParameterizedTypeReference<Map<String, Object>>() {})  // Process JSON stream
-          .doOnNext(event -> handleStatusUpdate(conversation.getId(), event))
-          .flatMap(event -> {
-
-            final String status = ((String) event.get("status")).toUpperCase();
-            event.put("id", conversation.getId());
-
-            if (List.of("COMPLETED", "ERROR").contains(status)) {
-
-              final String finalAnswer = status.equals("COMPLETED") ? (String) event.get("answer") : "Error processing request.",
-              rephrasedQuestion = status.equals("COMPLETED") ? (String) event.get("rephrasedQuestion") : "";
-
-              return conversationService
-                .updateConversationWithAnswer(conversation.getId(), queryRequest.getQuestion(), rephrasedQuestion, finalAnswer)
-                .thenMany(Flux.just(event));
-            }
+  public Flux<ServerSentEvent<QueryRunEvent>> handleQuery(@RequestBody final QueryRequest queryRequest,
+  final StreamOptions options, final Principal principal) throws TooManyRequestsException {
+    return queryService.handleQuery(queryRequest, principal.getName(), options);
+  }
 
-            return Flux.just(event);
-          });
-      })
-      .onErrorResume(e -> {
-        log.error("Error processing request: {}", e.getMessage());
-        return Flux.error(new IllegalArgumentException("Encountered an error while processing request."));
-      });
+  @PostMapping("/query/{runId}/cancel")
+  public Mono<String> cancelQuery(@PathVariable final String runId, final Principal principal) {
+    return queryService.cancelQuery(runId, principal.getName());
   }
 
-  private void handleStatusUpdate(final String conversationId, final Map<String, Object> update) {
+  @PostMapping(value = "/query", params = "mode=async")
+  public Mono<QueryJob> submitJob(@RequestBody final QueryRequest queryRequest, final Principal principal)
+  throws TooManyRequestsException {
+    return queryService.submitJob(queryRequest, principal.getName());
+  }
 
-    final String status = (String) update.get("status");
-    if (status == null) return;
+  @GetMapping("/query/jobs/{jobId}")
+  public Mono<QueryJob> getJob(@PathVariable final String jobId, final Principal principal) {
+    return queryService.getJob(jobId, principal.getName());
+  }
 
-    String result = "[" + conversationId + "]:";
-    switch (status.toUpperCase()) {
-      case "STARTED": result += "Processing started..."; break;
-      case "REPHRASED": result += "Rephrased question: " + update.get("rephrasedQuestion"); break;
-      case "RETRIEVING_INDEX": result += "Downloading collection of documents..."; break;
-      case "SEARCHING": result += "Searching for relevant documents..."; break;
-      case "PARTIAL_ANSWER": result += "Partial answer received: " + update.get("answer"); return;
-      case "COMPLETED": result += "Final answer: " + update.get("answer") + "References: " + update.get("references"); break;
-      case "ERROR": result += "Error: " + update.get("message"); break;
-      default: result += "Unknown status: " + status;
-    }
-    log.info(result);
+  @GetMapping(value = "/query/{runId}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public Flux<ServerSentEvent<QueryRunEvent>> resumeQuery(@PathVariable final String runId,
+  @RequestHeader(value = "Last-Event-ID", defaultValue = "-1") final long lastEventId,
+  final StreamOptions options, final Principal principal) {
+    return queryService.resumeQuery(runId, principal.getName(), lastEventId, options);
   }
 }
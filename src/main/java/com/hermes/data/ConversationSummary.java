@@ -0,0 +1,49 @@
+/*
+ * Copyright 2025 Aion Sigma Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hermes.data;
+
+import com.hermes.model.Conversation;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+/**
+ * Lightweight view of a conversation, for listings (DTO)
+ */
+@Data
+@Accessors(chain = true)
+public class ConversationSummary {
+
+  private String id;
+
+  private String title;
+
+  private Long updatedAt;
+
+  private int collectionCount;
+
+  private String lastMessage;
+
+  public static ConversationSummary of(final Conversation conversation) {
+
+    return new ConversationSummary()
+      .setId(conversation.getId())
+      .setTitle(conversation.getTitle())
+      .setUpdatedAt(conversation.getUpdatedAt())
+      .setCollectionCount(conversation.getCollections() == null ? 0 : conversation.getCollections().size())
+      .setLastMessage(conversation.getLastMessage());
+  }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2025 Aion Sigma Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hermes.data;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Data transfer object for keyset pagination (DTO)
+ */
+@Data
+@AllArgsConstructor
+public class CursorPagedResult<T> {
+
+  private List<T> content;
+
+  private int pageSize;
+
+  private String nextCursor; // Null on the last page
+
+  public boolean getHasNext() {
+    return nextCursor != null;
+  }
+}
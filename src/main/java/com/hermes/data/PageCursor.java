@@ -0,0 +1,56 @@
+/*
+ * Copyright 2025 Aion Sigma Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hermes.data;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Keyset pagination position: value of the sort field and document ID of the last item of a page.
+ *
+ * <p>Clients only see the encoded form, which is opaque. The value is null for the documents saved with a null sort
+ * field: Firestore orders them before the others, and the cursor resumes after them the same way.
+ */
+@Data
+@AllArgsConstructor
+public class PageCursor {
+
+  private Long value;
+
+  private String id;
+
+  public String encode() {
+    return Base64.getUrlEncoder()
+      .withoutPadding()
+      .encodeToString(((value != null ? value.toString() : "") + ":" + id).getBytes(StandardCharsets.UTF_8));
+  }
+
+  public static PageCursor decode(final String cursor) {
+
+    try {
+      final String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+      final int separator = decoded.indexOf(':');
+      final String value = decoded.substring(0, separator);
+      return new PageCursor(value.isEmpty() ? null : Long.valueOf(value), decoded.substring(separator + 1));
+    }
+    catch (RuntimeException e) {
+      throw new IllegalArgumentException("Invalid cursor!");
+    }
+  }
+}
@@ -16,14 +16,12 @@
 package com.hermes.data;
 import java.util.List;
 
-import lombok.AllArgsConstructor;
 import lombok.Data;
 
 /**
  * Data transfer object base (DTO)
  */
 @Data
-@AllArgsConstructor
 public class PagedResult<T> {
 
   private List<T> content;
@@ -34,7 +32,18 @@ public class PagedResult<T> {
 
   private int currentPage;
 
+  private Boolean hasNext; // Set when the query fetched a look-ahead item, computed from the total otherwise
+
+  private String nextCursor; // Opaque cursor of the next page, for queries supporting keyset pagination
+
+  public PagedResult(final List<T> content, final long totalElements, final int pageSize, final int currentPage) {
+    this.content = content;
+    this.totalElements = totalElements;
+    this.pageSize = pageSize;
+    this.currentPage = currentPage;
+  }
+
   public boolean getHasNext() {
-    return (long) (currentPage + 1) * pageSize < totalElements;
+    return hasNext != null ? hasNext : (long) (currentPage + 1) * pageSize < totalElements;
   }
 }
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2025 Aion Sigma Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hermes.data;
+
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonAnyGetter;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+
+/**
+ * Event of a query, as sent by the processor or the backend itself.
+ *
+ * <p>The clients get the events of the processor as it sent them: the status value, and the fields not modelled
+ * here.
+ */
+@JsonDeserialize(using = QueryEventDeserializer.class)
+public sealed interface QueryEvent
+permits QueryEvent.Queued, QueryEvent.Progress, QueryEvent.PartialAnswer, QueryEvent.AnswerDelta,
+QueryEvent.AnswerReset, QueryEvent.Completed, QueryEvent.Failed {
+
+  @JsonIgnore
+  QueryStatus status();
+
+  /** Status sent to the clients */
+  @JsonProperty("status")
+  default String statusValue() {
+    return status().getValue();
+  }
+
+  /** Fields of the processor event not modelled here */
+  @JsonAnyGetter
+  default Map<String, JsonNode> fields() {
+    return Map.of();
+  }
+
+  /** Waiting for the processor */
+  record Queued(int position) implements QueryEvent {
+
+    @Override
+    public QueryStatus status() {
+      return QueryStatus.QUEUED;
+    }
+  }
+
+  /** Step of the processing, with the rephrased question once known. The status value is the processor's one */
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  record Progress(QueryStatus status, String rephrasedQuestion, String statusValue, Map<String, JsonNode> fields)
+  implements QueryEvent {
+
+    public Progress(final QueryStatus status, final String rephrasedQuestion) {
+      this(status, rephrasedQuestion, status.getValue(), Map.of());
+    }
+  }
+
+  /** Part of the answer being generated */
+  record PartialAnswer(String answer, Map<String, JsonNode> fields) implements QueryEvent {
+
+    public PartialAnswer(final String answer) {
+      this(answer, Map.of());
+    }
+
+    @Override
+    public QueryStatus status() {
+      return QueryStatus.PARTIAL_ANSWER;
+    }
+  }
+
+  /** Text appended to the answer at the offset, for the clients in delta mode */
+  record AnswerDelta(String delta, int offset) implements QueryEvent {
+
+    @Override
+    public QueryStatus status() {
+      return QueryStatus.PARTIAL_ANSWER;
+    }
+  }
+
+  /**
+   * The answer so far, replacing the one the client has: sent instead of the partial answers no longer buffered for
+   * the client
+   */
+  record AnswerReset(String answer) implements QueryEvent {
+
+    @Override
+    public QueryStatus status() {
+      return QueryStatus.PARTIAL_ANSWER;
+    }
+  }
+
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  record Completed(String answer, String rephrasedQuestion, JsonNode references, Map<String, JsonNode> fields)
+  implements QueryEvent {
+
+    public Completed(final String answer, final String rephrasedQuestion, final JsonNode references) {
+      this(answer, rephrasedQuestion, references, Map.of());
+    }
+
+    @Override
+    public QueryStatus status() {
+      return QueryStatus.COMPLETED;
+    }
+  }
+
+  record Failed(String message, Map<String, JsonNode> fields) implements QueryEvent {
+
+    public Failed(final String message) {
+      this(message, Map.of());
+    }
+
+    @Override
+    public QueryStatus status() {
+      return QueryStatus.ERROR;
+    }
+  }
+}
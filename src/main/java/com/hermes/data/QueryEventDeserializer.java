@@ -0,0 +1,85 @@
+/*
+ * Copyright 2025 Aion Sigma Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hermes.data;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Deserializer of the processor events, reading the JSON tokens directly into the event instead of building a map
+ * per event. Unknown fields are kept as trees, to send them on to the clients, but for the IDs of the conversation
+ * and the run, set by the backend.
+ */
+@Slf4j
+public class QueryEventDeserializer extends StdDeserializer<QueryEvent> {
+
+  public QueryEventDeserializer() {
+    super(QueryEvent.class);
+  }
+
+  @Override
+  public QueryEvent deserialize(final JsonParser parser, final DeserializationContext context) throws IOException {
+
+    if (!parser.isExpectedStartObjectToken()) {
+      return (QueryEvent) context.handleUnexpectedToken(QueryEvent.class, parser);
+    }
+
+    String statusName = null, answer = null, rephrasedQuestion = null, message = null;
+    JsonNode references = null;
+    Map<String, JsonNode> fields = Map.of();
+
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+
+      final String field = parser.currentName();
+      parser.nextToken();
+
+      switch (field) {
+        case "status": statusName = parser.getValueAsString(); break;
+        case "answer": answer = parser.getValueAsString(); break;
+        case "rephrasedQuestion": rephrasedQuestion = parser.getValueAsString(); break;
+        case "message": message = parser.getValueAsString(); break;
+        case "references": references = context.readTree(parser); break;
+        case "id", "runId": parser.skipChildren(); break;
+        default:
+          if (fields.isEmpty()) {
+            fields = new LinkedHashMap<>();
+          }
+          fields.put(field, context.readTree(parser));
+      }
+    }
+
+    final QueryStatus status = QueryStatus.of(statusName);
+    if (status == QueryStatus.UNKNOWN) {
+      log.warn("Unknown status of processor event: [{}]", statusName);
+    }
+
+    switch (status) {
+      case PARTIAL_ANSWER: return new QueryEvent.PartialAnswer(answer, fields);
+      case COMPLETED: return new QueryEvent.Completed(answer, rephrasedQuestion, references, fields);
+      case ERROR: return new QueryEvent.Failed(message, fields);
+      default: return new QueryEvent.Progress(status, rephrasedQuestion, statusName, fields);
+    }
+  }
+}
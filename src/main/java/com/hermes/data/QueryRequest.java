@@ -31,4 +31,6 @@ public class QueryRequest {
   private String question;
 
   private List<String> indexes;
+
+  private Long timeoutMs; // Optional, at most hermes.query.timeout-seconds
 }
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2025 Aion Sigma Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hermes.data;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+
+/**
+ * Status of the events of a query
+ */
+public enum QueryStatus {
+
+  QUEUED,
+
+  STARTED,
+
+  REPHRASED,
+
+  RETRIEVING_INDEX,
+
+  SEARCHING,
+
+  PARTIAL_ANSWER,
+
+  COMPLETED,
+
+  ERROR,
+
+  UNKNOWN;
+
+  private static final QueryStatus[] VALUES = values();
+
+  /** Get the status of a processor event, whatever its case */
+  public static QueryStatus of(final String value) {
+
+    for (final QueryStatus status : VALUES) {
+      if (status.name().equalsIgnoreCase(value)) return status;
+    }
+    return UNKNOWN;
+  }
+
+  /** Value of the status in the processor events, lowercase */
+  @JsonValue
+  public String getValue() {
+    return name().toLowerCase();
+  }
+
+  /** Whether the query is over */
+  public boolean isFinal() {
+    return this == COMPLETED || this == ERROR;
+  }
+}
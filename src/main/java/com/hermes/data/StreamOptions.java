@@ -0,0 +1,33 @@
+/*
+ * Copyright 2025 Aion Sigma Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hermes.data;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+/**
+ * Options of a client for its stream of query events, from the request parameters
+ */
+@Data
+@Accessors(chain = true)
+public class StreamOptions {
+
+  private Long coalesceMs; // Partial answers merged into one event every coalesceMs (0: not merged)
+
+  private Integer coalesceChars; // Merged partial answers sent early once this long
+
+  private boolean delta; // Partial answers sent as the text appended at an offset, instead of the processor format
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2025 Aion Sigma Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hermes.data;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+/**
+ * Result of the upload of one file (DTO)
+ */
+@Data
+@Accessors(chain = true)
+public class UploadResult {
+
+  private String originalName;
+
+  private String name; // Stored file name, null when the upload failed
+
+  private boolean success;
+
+  private String error;
+
+  private long sizeInBytes;
+
+  private String checksum; // MD5, hex
+
+  private long durationMs;
+}
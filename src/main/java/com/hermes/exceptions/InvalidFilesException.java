@@ -15,8 +15,18 @@
  */
 package com.hermes.exceptions;
 
+import java.util.List;
+
 public class InvalidFilesException extends Exception {
-    public InvalidFilesException() {
-        super();
+
+    private final List<String> invalidFileIds;
+
+    public InvalidFilesException(List<String> invalidFileIds) {
+        super("Invalid file IDs: " + String.join(", ", invalidFileIds));
+        this.invalidFileIds = invalidFileIds;
+    }
+
+    public List<String> getInvalidFileIds() {
+        return invalidFileIds;
     }
 }
@@ -36,9 +36,17 @@ public class Conversation {
 
   private String userId;
 
+  /**
+   * Legacy embedded history. Messages are stored in the conversations/{id}/messages subcollection,
+   * this list is only filled on read responses or by documents that haven't been migrated yet.
+   */
   private List<Message> history = new ArrayList<>();
 
   private List<String> collections = new ArrayList<>();
 
+  private long messageCount;
+
+  private String lastMessage; // Preview of the last message, for listings
+
   private Long updatedAt;
 }
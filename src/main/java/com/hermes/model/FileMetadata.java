@@ -0,0 +1,61 @@
+/*
+ * Copyright 2025 Aion Sigma Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hermes.model;
+
+import com.google.cloud.spring.data.firestore.Document;
+import com.hermes.data.FileStatus;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import com.google.cloud.firestore.annotation.DocumentId;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Catalog entry of a file stored in GCS, so that files can be filtered, sorted and paged with queries.
+ * Written on upload and delete, reconciled periodically with the bucket.
+ */
+@Data
+@Accessors(chain = true)
+@Document(collectionName = "files")
+public class FileMetadata {
+
+  @DocumentId
+  private String id; // File name in the user folder
+
+  private String userId;
+
+  private String originalName;
+
+  private String lowercaseOriginalName; // For case-insensitive sorting
+
+  private long sizeInBytes;
+
+  private String checksum;
+
+  private Long createTime; // Timestamp in second
+
+  private Long updateTime;
+
+  private FileStatus status;
+
+  private String keywords;
+
+  private List<String> searchTokens; // Substrings (up to 3 characters) of the name and keywords, for text search
+
+  private Map<String, String> metadata; // GCS metadata of the blob
+}
@@ -15,6 +15,8 @@
  */
 package com.hermes.model;
 
+import com.google.cloud.firestore.annotation.DocumentId;
+import com.google.cloud.spring.data.firestore.Document;
 import com.hermes.service.impl.Utils;
 
 import lombok.Data;
@@ -24,8 +26,14 @@ import lombok.experimental.Accessors;
 @Data
 @Accessors(chain = true)
 @NoArgsConstructor
+@Document(collectionName = "messages") // Subcollection of conversations/{id}
 public class Message {
 
+	@DocumentId
+	private String id; // Zero-padded sequence, keeps the natural order of the subcollection
+
+	private long sequence;
+
 	private String role; // "user", "assistant", "system"
 
 	private String content;
@@ -34,6 +42,8 @@ public class Message {
 
 	private Long timestamp;
 
+	private int tokenCount; // Estimated when the message is stored
+
 	public Message(String role, String content, String rephrased) {
 		this.role = role;
 		this.content = content;
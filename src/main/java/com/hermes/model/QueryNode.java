@@ -0,0 +1,37 @@
+/*
+ * Copyright 2025 Aion Sigma Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hermes.model;
+
+import com.google.cloud.spring.data.firestore.Document;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import com.google.cloud.firestore.annotation.DocumentId;
+
+/**
+ * Node running query jobs, alive while its heartbeat is recent
+ */
+@Data
+@Accessors(chain = true)
+@Document(collectionName = "querynodes")
+public class QueryNode {
+
+  @DocumentId
+  private String id;
+
+  private Long heartbeatAt;
+}
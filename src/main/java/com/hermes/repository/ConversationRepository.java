@@ -29,4 +29,7 @@ public interface ConversationRepository extends FirestoreReactiveRepository<Conv
   Mono<Conversation> findByIdAndUserId(String id, String userId);
 
   Flux<Conversation> findByUserId(String userId);
+
+  /** Conversations referencing a collection (array-contains) */
+  Flux<Conversation> findByCollectionsContaining(String collectionId);
 }
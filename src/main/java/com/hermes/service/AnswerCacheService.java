@@ -0,0 +1,34 @@
+/*
+ * Copyright 2025 Aion Sigma Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hermes.service;
+
+import java.util.List;
+
+import com.hermes.data.QueryEvent;
+
+import reactor.core.publisher.Mono;
+
+public interface AnswerCacheService {
+
+  /** Get the cache key of a question against collections, empty when the answer can't be cached */
+  Mono<String> getKey(final String question, final List<String> collections);
+
+  /** Get the cached events of an answer, null when absent */
+  List<QueryEvent> get(final String key);
+
+  /** Cache the events of an answer */
+  void put(final String key, final List<QueryEvent> events);
+}
@@ -17,6 +17,8 @@ package com.hermes.service;
 
 import java.util.List;
 
+import com.hermes.data.ConversationSummary;
+import com.hermes.data.CursorPagedResult;
 import com.hermes.model.Conversation;
 import com.hermes.model.Index;
 
@@ -27,8 +29,14 @@ public interface ConversationService {
 
   Flux<Conversation> getAllConversations(final String userId);
 
+  /** Get a page of conversation summaries (at most 100), most recently updated first */
+  Mono<CursorPagedResult<ConversationSummary>> getConversationSummaries(final String userId, final String cursor, final int size);
+
   Mono<Conversation> getConversationById(String conversationId);
 
+  /** Get the conversation without its messages */
+  Mono<Conversation> getConversationHeader(String conversationId);
+
   Mono<Conversation> getConversationById(String conversationId, String userId);
 
   Mono<Conversation> createNewConversation(String userId, List<String> collections);
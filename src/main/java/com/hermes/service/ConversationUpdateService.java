@@ -0,0 +1,41 @@
+/*
+ * Copyright 2025 Aion Sigma Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hermes.service;
+
+import java.util.List;
+
+import com.hermes.model.Conversation;
+import com.hermes.model.Message;
+
+import reactor.core.publisher.Mono;
+
+public interface ConversationUpdateService {
+
+  /** Change of a conversation header, returning the messages to append. Throws to reject the update. */
+  @FunctionalInterface
+  interface Update {
+    List<Message> apply(final Conversation conversation) throws Exception;
+  }
+
+  /** Apply the update to the stored header, after the pending updates of the conversation */
+  Mono<Conversation> update(final String conversationId, final Update update);
+
+  /**
+   * Delete all the messages of the conversation after its pending updates, then apply the update.
+   * The messages are deleted before the update runs: it should not reject the clear.
+   */
+  Mono<Conversation> clear(final String conversationId, final Update update);
+}
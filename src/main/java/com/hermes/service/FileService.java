@@ -18,7 +18,7 @@ package com.hermes.service;
 import com.hermes.data.DateComparator;
 import com.hermes.data.FileStatus;
 import com.hermes.data.PagedResult;
-import com.hermes.exceptions.InvalidOperationException;
+import com.hermes.data.UploadResult;
 import com.hermes.exceptions.NotFoundException;
 
 import org.springframework.data.domain.Sort.Direction;
@@ -33,9 +33,10 @@ import java.util.Map;
 
 public interface FileService {
 
-  Mono<List<String>> validateFileIds(List<String> fileIds, String userId) throws InvalidOperationException;
+  Mono<UploadResult> uploadFile(MultipartFile file, String userId);
 
-  Mono<String> uploadFile(MultipartFile file, String userId);
+  /** Upload the files with a bounded concurrency, results are emitted as each file finishes */
+  Flux<UploadResult> uploadFiles(List<MultipartFile> files, String userId);
 
   Flux<Map<String, Object>> listFiles(String userId);
 
@@ -46,6 +47,9 @@ public interface FileService {
 
   Mono<String> getFileChecksum(String fileId, String userId);
 
+  /** Get the checksums of the files (Key: File ID), fails if a file doesn't exist */
+  Mono<Map<String, String>> getFileChecksums(List<String> fileIds, String userId);
+
   Mono<Map<String, Object>> getFile(String fileId, String userId);
 
   Map<String, Object> getFileData(final String fileId, final String userId) throws IOException, NotFoundException;
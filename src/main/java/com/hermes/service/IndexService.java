@@ -36,7 +36,8 @@ public interface IndexService {
   Mono<PagedResult<Index>> find(final String userId, final Sort.Direction direction, final int page, final int size);
 
   Mono<PagedResult<Index>> filter(final String userId, final String targetId, final String q, final boolean isPublicPath,
-  final LocalDate date, final DateComparator dateCmp, final CollectionState state, final Sort.Direction direction, final int page, final int size);
+  final LocalDate date, final DateComparator dateCmp, final CollectionState state, final Sort.Direction direction, final int page, final int size,
+  final String cursor);
 
   Flux<Index> findAllById(final List<String> ids);
 
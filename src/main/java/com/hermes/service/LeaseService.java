@@ -0,0 +1,32 @@
+/*
+ * Copyright 2025 Aion Sigma Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hermes.service;
+
+import com.hermes.model.Lease;
+
+import reactor.core.publisher.Mono;
+
+public interface LeaseService {
+
+  /** Take the lease of a task if it is free, expired or already held by this node. Empty when another node holds it */
+  Mono<Lease> acquire(final String name, final long seconds);
+
+  /**
+   * Save the progress of the task, extending the lease held by this node. Fails with an IllegalStateException when
+   * another node took the lease: the task must stop.
+   */
+  Mono<Lease> save(final Lease lease, final long seconds);
+}
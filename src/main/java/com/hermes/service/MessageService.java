@@ -0,0 +1,46 @@
+/*
+ * Copyright 2025 Aion Sigma Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hermes.service;
+
+import java.util.List;
+import java.util.function.Function;
+
+import com.hermes.model.Conversation;
+import com.hermes.model.Message;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+public interface MessageService {
+
+  /** Get the messages of a conversation, ordered by sequence */
+  Flux<Message> getMessages(final String conversationId);
+
+  /** Get the last messages of a conversation with one of the roles, ordered by sequence */
+  Flux<Message> getLastMessages(final String conversationId, final List<String> roles, final int limit);
+
+  /**
+   * Read the conversation header in a transaction, apply the update to it and append the messages it returns.
+   * The update can run more than once when concurrent writes abort the transaction.
+   */
+  Mono<Conversation> update(final String conversationId, final Function<Conversation, List<Message>> update);
+
+  /** Move the legacy embedded history of a conversation into the messages subcollection */
+  Mono<Conversation> migrate(final Conversation conversation);
+
+  /** Delete all the messages of a conversation */
+  Mono<Void> deleteAll(final String conversationId);
+}
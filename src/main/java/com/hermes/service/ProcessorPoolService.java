@@ -0,0 +1,32 @@
+/*
+ * Copyright 2025 Aion Sigma Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hermes.service;
+
+import java.util.function.Function;
+
+import org.springframework.web.reactive.function.client.WebClient;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+public interface ProcessorPoolService {
+
+  /** Run a call on the processor instance with the fewest streams in flight, the client being bound to its URL */
+  <T> Flux<T> route(final Function<WebClient, Flux<T>> call);
+
+  /** Run a call on every healthy processor instance */
+  <T> Flux<T> broadcast(final Function<WebClient, Mono<T>> call);
+}
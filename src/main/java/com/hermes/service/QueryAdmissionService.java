@@ -0,0 +1,45 @@
+/*
+ * Copyright 2025 Aion Sigma Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hermes.service;
+
+import java.util.function.Supplier;
+
+import com.hermes.data.QueryEvent;
+import com.hermes.exceptions.TooManyRequestsException;
+
+import reactor.core.publisher.Flux;
+
+public interface QueryAdmissionService {
+
+  /** Place of a query in the queue of its user, taken before the query is prepared */
+  interface Admission {
+
+    /**
+     * Run the processor query once a slot is free. Waiting queries are served in turn between users, and get QUEUED
+     * events with their position. The place is given back when the query ends.
+     */
+    Flux<QueryEvent> run(final Supplier<Flux<QueryEvent>> query);
+
+    /** Give the place back, when the query doesn't run. Does nothing once the query runs, and can't prevent it */
+    void release();
+  }
+
+  /**
+   * Take a place for a query of the user, before anything is done for the query: a full queue is rejected before the
+   * response starts
+   */
+  Admission admit(final String userId) throws TooManyRequestsException;
+}
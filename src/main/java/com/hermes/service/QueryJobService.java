@@ -0,0 +1,37 @@
+/*
+ * Copyright 2025 Aion Sigma Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hermes.service;
+
+import com.hermes.data.QueryEvent;
+import com.hermes.model.QueryJob;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+public interface QueryJobService {
+
+  /** Save a new job, failing with TooManyRequestsException when too many are waiting */
+  Mono<QueryJob> create(final String userId, final String conversationId, final String question);
+
+  /** Run the events of a job on the worker pool, saving its state */
+  Flux<QueryEvent> run(final QueryJob job, final Flux<QueryEvent> events);
+
+  /** Get a job of the user */
+  Mono<QueryJob> getJob(final String jobId, final String userId);
+
+  /** Get the final event of a finished job */
+  QueryEvent toEvent(final QueryJob job);
+}
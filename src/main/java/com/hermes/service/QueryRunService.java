@@ -0,0 +1,54 @@
+/*
+ * Copyright 2025 Aion Sigma Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hermes.service;
+
+import java.util.function.Function;
+
+import org.springframework.http.codec.ServerSentEvent;
+
+import com.hermes.data.QueryEvent;
+import com.hermes.data.QueryRunEvent;
+import com.hermes.data.StreamOptions;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+public interface QueryRunService {
+
+  /**
+   * Start a run of the events of a query, which goes on while its clients may reconnect. Returns the run ID.
+   * The events get the stop signal of the run: its message when the run is cancelled or abandoned.
+   */
+  String start(final String userId, final String conversationId, final Function<Mono<String>, Flux<QueryEvent>> events);
+
+  /** Start a run with the given ID, which goes on until its end even without clients */
+  void startInBackground(final String runId, final String userId, final String conversationId,
+  final Function<Mono<String>, Flux<QueryEvent>> events);
+
+  /**
+   * Get the events of a run after the last one received by the client (-1 for all), then the live ones. The partial
+   * answers no longer buffered are replaced by a reset of the answer so far.
+   */
+  Flux<ServerSentEvent<QueryRunEvent>> attach(final String runId, final String userId, final long lastEventId,
+  final StreamOptions options);
+
+  /** Get the events of the runs of a conversation of the user: the one in flight, if any, then the next ones */
+  Flux<ServerSentEvent<QueryRunEvent>> watch(final String conversationId, final String userId,
+  final StreamOptions options);
+
+  /** Stop a run of the user and its processor stream, its question is saved with an error */
+  Mono<String> cancel(final String runId, final String userId);
+}
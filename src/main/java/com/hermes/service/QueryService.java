@@ -0,0 +1,51 @@
+/*
+ * Copyright 2025 Aion Sigma Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hermes.service;
+
+import org.springframework.http.codec.ServerSentEvent;
+
+import com.hermes.data.QueryRequest;
+import com.hermes.data.QueryRunEvent;
+import com.hermes.data.StreamOptions;
+import com.hermes.exceptions.TooManyRequestsException;
+import com.hermes.model.QueryJob;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+public interface QueryService {
+
+  /** Answer a question in a conversation, streaming the processor events of a new run */
+  Flux<ServerSentEvent<QueryRunEvent>> handleQuery(final QueryRequest queryRequest, final String userId,
+  final StreamOptions options) throws TooManyRequestsException;
+
+  /** Stream the answers of a conversation as they come, whichever client asked the question */
+  Flux<ServerSentEvent<QueryRunEvent>> watchConversation(final String conversationId, final String userId,
+  final StreamOptions options);
+
+  /** Cancel a run of the user, stopping its processor stream */
+  Mono<String> cancelQuery(final String runId, final String userId);
+
+  /** Answer a question in the background, returning the job to poll */
+  Mono<QueryJob> submitJob(final QueryRequest queryRequest, final String userId) throws TooManyRequestsException;
+
+  /** Get a job of the user, with its answer once completed */
+  Mono<QueryJob> getJob(final String jobId, final String userId);
+
+  /** Stream the events of a run after the last one received by the client (-1 for all) */
+  Flux<ServerSentEvent<QueryRunEvent>> resumeQuery(final String runId, final String userId, final long lastEventId,
+  final StreamOptions options);
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2025 Aion Sigma Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hermes.service.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.hermes.data.QueryEvent;
+import com.hermes.model.Index;
+import com.hermes.service.AnswerCacheService;
+import com.hermes.service.IndexService;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+/**
+ * In-memory cache of answers, keyed by the normalized question, the collection IDs and the version of their files.
+ *
+ * <p>The version is derived from the checksums of the files of each collection: adding, removing or changing
+ * a file changes the key, so stale answers are never served. They are evicted when the cache is full (LRU) or
+ * when they expire.
+ */
+@Service
+@Slf4j
+public class AnswerCacheServiceImpl implements AnswerCacheService {
+
+  @Autowired
+  private IndexService indexService;
+
+  @Value("${hermes.query.cache.enabled:true}")
+  private boolean enabled;
+
+  @Value("${hermes.query.cache.max-entries:1000}")
+  private int maxEntries;
+
+  @Value("${hermes.query.cache.ttl-seconds:86400}")
+  private long ttlSeconds;
+
+  private record CachedAnswer(List<QueryEvent> events, long expiresAt) {}
+
+  private final Map<String, CachedAnswer> cache = new LinkedHashMap<>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(final Map.Entry<String, CachedAnswer> eldest) {
+      return size() > maxEntries;
+    }
+  };
+
+  @Override
+  public Mono<String> getKey(final String question, final List<String> collections) {
+
+    if (!enabled || collections == null || collections.isEmpty()) {
+      return Mono.empty();
+    }
+
+    return indexService.findAllById(collections)
+      .collectList()
+      .flatMap(indexes -> {
+
+        // A missing collection is not cached
+        if (indexes.size() != collections.stream().distinct().count()) {
+          return Mono.empty();
+        }
+
+        final StringBuilder source = new StringBuilder(normalize(question));
+        indexes.stream()
+          .sorted(Comparator.comparing(Index::getId))
+          .forEach(index -> source
+            .append('\n')
+            .append(index.getId())
+            .append(':')
+            .append(index.getFiles() != null ? new TreeMap<>(index.getFiles()) : Map.of()));
+
+        return Mono.just(sha256(source.toString()));
+      });
+  }
+
+  @Override
+  public List<QueryEvent> get(final String key) {
+
+    final CachedAnswer answer;
+    synchronized (cache) {
+      answer = cache.get(key);
+      if (answer != null && answer.expiresAt() < System.currentTimeMillis()) {
+        cache.remove(key);
+        return null;
+      }
+    }
+
+    return answer == null ? null : answer.events();
+  }
+
+  @Override
+  public void put(final String key, final List<QueryEvent> events) {
+
+    // Events are immutable: they are shared between the answers
+    final List<QueryEvent> copy = List.copyOf(events);
+    synchronized (cache) {
+      cache.put(key, new CachedAnswer(copy, System.currentTimeMillis() + ttlSeconds * 1000));
+    }
+  }
+
+  /**
+   * Lowercase, single spaces, without trailing punctuation
+   */
+  private String normalize(final String question) {
+    return question.trim().toLowerCase().replaceAll("\\s+", " ").replaceAll("[?!.\\s]+$", "");
+  }
+
+  private String sha256(final String source) {
+
+    try {
+      final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      return HexFormat.of().formatHex(digest.digest(source.getBytes(StandardCharsets.UTF_8)));
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
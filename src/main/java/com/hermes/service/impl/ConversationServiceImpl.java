@@ -15,6 +15,17 @@
  */
 package com.hermes.service.impl;
 
+import com.google.cloud.spring.data.firestore.FirestoreTemplate;
+import com.google.firestore.v1.StructuredQuery;
+import com.google.firestore.v1.Value;
+import com.google.firestore.v1.StructuredQuery.CompositeFilter;
+import com.google.firestore.v1.StructuredQuery.FieldFilter;
+import com.google.firestore.v1.StructuredQuery.FieldReference;
+import com.google.firestore.v1.StructuredQuery.Filter;
+import com.google.firestore.v1.StructuredQuery.Projection;
+import com.hermes.data.ConversationSummary;
+import com.hermes.data.CursorPagedResult;
+import com.hermes.data.PageCursor;
 import com.hermes.exceptions.ConversationNotFoundException;
 import com.hermes.exceptions.IndexNotFoundException;
 import com.hermes.model.Conversation;
@@ -22,16 +33,19 @@ import com.hermes.model.Index;
 import com.hermes.model.Message;
 import com.hermes.repository.ConversationRepository;
 import com.hermes.service.ConversationService;
+import com.hermes.service.ConversationUpdateService;
 import com.hermes.service.IndexService;
+import com.hermes.service.MessageService;
+import com.hermes.service.ProcessorPrefetchService;
 
 import lombok.extern.slf4j.Slf4j;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 @Service
@@ -44,25 +58,104 @@ public class ConversationServiceImpl implements ConversationService {
   @Autowired
   private IndexService indexService;
 
+  @Autowired
+  private MessageService messageService;
+
+  @Autowired
+  private ConversationUpdateService conversationUpdateService;
+
+  @Autowired
+  private ProcessorPrefetchService processorPrefetchService;
+
+  @Autowired
+  private FirestoreTemplate firestoreTemplate;
+
+  @Autowired
+  private PageCursorHelper pageCursorHelper;
+
+  private static final String COLLECTION_NAME = "conversations";
+
+  /** Histories loaded at the same time when listing all the conversations of a user */
+  private static final int HISTORY_LOAD_CONCURRENCY = 8;
+
+  /** Larger pages of summaries are cut to this size */
+  private static final int MAX_PAGE_SIZE = 100;
+
+  private static final String USER_ID_FIELD = "userId";
+
+  private static final String UPDATED_AT_FIELD = "updatedAt";
+
+  /** Header fields needed by the summaries, the legacy embedded history is never loaded */
+  private static final List<String> SUMMARY_FIELDS = List.of("title", "collections", "lastMessage", UPDATED_AT_FIELD);
+
   @Override
 	public Flux<Conversation> getAllConversations(final String userId) {
-    return conversationRepository.findByUserId(userId);
+
+    // Same response as before the messages subcollection: the full history of each conversation
+    return conversationRepository
+      .findByUserId(userId)
+      .flatMapSequential(conversation -> messageService.migrate(conversation).flatMap(this::withHistory),
+        HISTORY_LOAD_CONCURRENCY);
+  }
+
+  @Override
+  public Mono<CursorPagedResult<ConversationSummary>> getConversationSummaries(final String userId, final String cursor,
+  final int size) {
+
+    if (size <= 0) {
+      return Mono.error(new IllegalArgumentException("Invalid page size!"));
+    }
+
+    final int pageSize = Math.min(size, MAX_PAGE_SIZE);
+
+    final Projection.Builder projection = Projection.newBuilder();
+    SUMMARY_FIELDS.forEach(field -> projection.addFields(FieldReference.newBuilder().setFieldPath(field)));
+
+    final StructuredQuery.Builder queryBuilder = StructuredQuery.newBuilder()
+      .setSelect(projection)
+      .setWhere(Filter.newBuilder()
+        .setCompositeFilter(CompositeFilter.newBuilder()
+        .setOp(CompositeFilter.Operator.AND)
+        .addFilters(Filter.newBuilder()
+          .setFieldFilter(FieldFilter.newBuilder()
+          .setField(FieldReference.newBuilder().setFieldPath(USER_ID_FIELD))
+          .setOp(FieldFilter.Operator.EQUAL)
+          .setValue(Value.newBuilder().setStringValue(userId))))
+        // Legacy conversations saved without update time (null) are left out
+        .addFilters(Filter.newBuilder()
+          .setFieldFilter(FieldFilter.newBuilder()
+          .setField(FieldReference.newBuilder().setFieldPath(UPDATED_AT_FIELD))
+          .setOp(FieldFilter.Operator.GREATER_THAN_OR_EQUAL)
+          .setValue(Value.newBuilder().setIntegerValue(0))))));
+
+    // Composite index (userId, updatedAt desc, __name__ desc): see firestore.indexes.json
+    pageCursorHelper.apply(queryBuilder, COLLECTION_NAME, UPDATED_AT_FIELD, Sort.Direction.DESC,
+      cursor == null || cursor.isEmpty() ? null : PageCursor.decode(cursor), pageSize);
+
+    return firestoreTemplate
+      .execute(queryBuilder, Conversation.class)
+      .collectList()
+      .map(items -> pageCursorHelper.toResult(
+        items,
+        pageSize,
+        item -> new PageCursor(item.getUpdatedAt(), item.getId()),
+        ConversationSummary::of
+      ));
   }
 
   @Override
   public Mono<Conversation> getConversationById(final String conversationId) {
+    return this.getHeader(conversationId).flatMap(this::withHistory);
+  }
 
-    return conversationRepository
-      .findById(conversationId)
-      .switchIfEmpty(Mono.error(new ConversationNotFoundException()));
+  @Override
+  public Mono<Conversation> getConversationHeader(final String conversationId) {
+    return this.getHeader(conversationId);
   }
 
   @Override
   public Mono<Conversation> getConversationById(final String conversationId, final String userId) {
- 
-    return conversationRepository
-      .findByIdAndUserId(conversationId, userId)
-      .switchIfEmpty(Mono.error(new ConversationNotFoundException()));
+    return this.getHeader(conversationId, userId).flatMap(this::withHistory);
   }
 
   @Override
@@ -73,109 +166,101 @@ public class ConversationServiceImpl implements ConversationService {
       .setUpdatedAt(Utils.getTimestamp());
     final Mono<Conversation> result = conversationRepository.save(newConversation);
 
-    return collections == null || collections.size() == 0 ? result
-      : result.flatMap(c -> this.doAddCollection(c, collections, true));
+    return (collections == null || collections.size() == 0 ? result
+      : result.flatMap(c -> this.doAddCollection(c.getId(), userId, collections, true)))
+      .flatMap(this::withHistory);
   }
 
   @Override
   public Mono<Conversation> updateConversationTitle(final String userId, final String conversationId, final String title) {
 
-    return this.getConversationById(conversationId, userId)
-      .flatMap(conversation -> {
+    if (title == null || title.isBlank()) {
+      return Mono.error(new IllegalArgumentException("Invalid title!"));
+    }
 
-        if (title == null || title.isBlank()) {
-          return Mono.error(new IllegalArgumentException("Invalid title!"));
-        }
+    return conversationUpdateService
+      .update(conversationId, conversation -> {
 
+        checkOwner(conversation, userId);
         conversation
           .setTitle(title)
           .setUpdatedAt(Utils.getTimestamp());
-    
-        return conversationRepository.save(conversation);
-      });
+        return List.of();
+      })
+      .flatMap(this::withHistory);
   }
 
   @Override
   public Mono<Conversation> updateConversationWithAnswer(final String conversationId, final String question,
   final String rephrasedQuestion, final String answer) {
 
-    return this.getConversationById(conversationId)
-      .flatMap(conversation -> {
-
-        // Add new question and answer to conversation history
-        final List<Message> history = conversation.getHistory();
-        history.add(new Message("user", question, rephrasedQuestion));
-        history.add(new Message("assistant", answer));
+    return conversationUpdateService.update(conversationId, conversation -> {
 
-        final String title = conversation.getTitle();
+      final String title = conversation.getTitle();
 
-        conversation
-          .setHistory(history)
-          .setTitle(title != null && !title.isEmpty() ? title : question)
-          .setUpdatedAt(Utils.getTimestamp());
+      conversation
+        .setTitle(title != null && !title.isEmpty() ? title : question)
+        .setUpdatedAt(Utils.getTimestamp());
 
-        // Save updated conversation
-        return conversationRepository.save(conversation);
-      });
+      // Append new question and answer to conversation history
+      return List.of(
+        new Message("user", question, rephrasedQuestion),
+        new Message("assistant", answer)
+      );
+    });
   }
 
   @Override
 	public Mono<String> deleteConversation(final String conversationId, final String userId) {
 
-    return this.getConversationById(conversationId, userId)
-      .flatMap(index -> conversationRepository.delete(index)
+    return this.getHeader(conversationId, userId)
+      .flatMap(conversation -> messageService.deleteAll(conversation.getId())
+        .then(conversationRepository.delete(conversation))
         .then(Mono.just("Conversation deleted successfully.")));
 	}
 
   @Override
   public Mono<Conversation> addCollections(final String conversationId, final List<String> collections, final String userId) {
 
-    return this.getConversationById(conversationId, userId)
-      .flatMap(c -> this.doAddCollection(c, collections, false));
+    return this.doAddCollection(conversationId, userId, collections, false)
+      .flatMap(this::withHistory);
   }
 
   @Override
   public Mono<Conversation> removeCollection(final String conversationId, final String collectionId, final String userId) {
 
-    return this.getConversationById(conversationId, userId)
-      .flatMap(conversation -> {
-
-        try {
-          return indexService
-          .getIndex(collectionId)
-          .flatMap(collection -> {
-
-            List<String> existingCollections = conversation.getCollections();
-            existingCollections = existingCollections != null ? existingCollections : new ArrayList<>();
-
-            if (!existingCollections.contains(collection.getId())) {
-              return Mono.error(new IllegalArgumentException(String.format("The collection %c %s %c wasn't added!", 171, collection.getName(), 187)));
-            }
-
-            final List<Message> history = conversation.getHistory();
-            history.add(new Message(
-              "system",
-              String.format("Collection %c %s %c removed from the discussion", 171, collection.getName(), 187)
-            ));
-
-            existingCollections.remove(collectionId);
-            conversation
-              .setCollections(existingCollections)
-              .setHistory(history)
-              .setUpdatedAt(Utils.getTimestamp());
-            return conversationRepository.save(conversation);
-          });
-        }
-        catch (IndexNotFoundException e) {
-          return Mono.error(e);
-        }
-      });
+    try {
+      return indexService
+        .getIndex(collectionId)
+        .flatMap(collection -> conversationUpdateService.update(conversationId, conversation -> {
+
+          checkOwner(conversation, userId);
+          final List<String> existingCollections = conversation.getCollections();
+
+          if (!existingCollections.contains(collection.getId())) {
+            throw new IllegalArgumentException(String.format("The collection %c %s %c wasn't added!", 171, collection.getName(), 187));
+          }
+
+          existingCollections.remove(collectionId);
+          conversation
+            .setCollections(existingCollections)
+            .setUpdatedAt(Utils.getTimestamp());
+          return List.of(new Message(
+            "system",
+            String.format("Collection %c %s %c removed from the discussion", 171, collection.getName(), 187)
+          ));
+        }))
+        .flatMap(this::withHistory);
+    }
+    catch (IndexNotFoundException e) {
+      return Mono.error(e);
+    }
   }
 
   @Override
   public Flux<Index> getCollections(final String conversationId, final String userId) {
 
-    return this.getConversationById(conversationId, userId)
+    return this.getHeader(conversationId, userId)
       .flatMapMany(conversation ->
        conversation.getCollections() == null || conversation.getCollections().size() == 0
         ? Flux.empty()
@@ -186,46 +271,45 @@ public class ConversationServiceImpl implements ConversationService {
   @Override
   public Mono<Conversation> clearHistory(final String conversationId, final String userId) {
 
-    return this.getConversationById(conversationId, userId)
-      .flatMap(conversation -> {
-
-        conversation
-          .setHistory(Collections.emptyList())
-          .setUpdatedAt(Utils.getTimestamp());
-
-        return conversationRepository.save(conversation);
-      });
+    // The owner is checked first: the messages are deleted before the update runs
+    return this.getHeader(conversationId, userId)
+      .flatMap(owned -> conversationUpdateService.clear(conversationId, conversation -> {
+        conversation.setUpdatedAt(Utils.getTimestamp());
+        return List.of();
+      }));
   }
 
   @Override
   public Mono<Conversation> deleteAllCollections(final String conversationId, final String userId) {
 
-    return this.getConversationById(conversationId, userId)
-      .flatMap(conversation -> {
-
-        final List<Message> history = conversation.getHistory();
-        history.add(new Message("system", "All collections were removed from the discussion"));
+    return conversationUpdateService
+      .update(conversationId, conversation -> {
 
+        checkOwner(conversation, userId);
         conversation
-          .setCollections(List.of())
-          .setHistory(history)
+          .setCollections(new ArrayList<>())
           .setUpdatedAt(Utils.getTimestamp());
-        return conversationRepository.save(conversation);
-      });
+        return List.of(new Message("system", "All collections were removed from the discussion"));
+      })
+      .flatMap(this::withHistory);
   }
 
-  private Mono<Conversation> doAddCollection(final Conversation conversation, final List<String> collections,
-  final boolean newConversation) {
+  /**
+   * Add the collections to the conversation. They are checked against the collections of the conversation
+   * when the update is applied, after the updates waiting before it.
+   */
+  private Mono<Conversation> doAddCollection(final String conversationId, final String userId,
+  final List<String> collections, final boolean newConversation) {
 
     return collections == null 
     ? Mono.error(new IllegalArgumentException("Collections shouldn't be null"))
     : indexService
       .findAllById(collections)
       .collectList()
-      .flatMap(collectionList -> {
-  
-        List<String> existingCollections = conversation.getCollections();
-        existingCollections = existingCollections != null ? existingCollections : new ArrayList<>();
+      .flatMap(collectionList -> conversationUpdateService.update(conversationId, conversation -> {
+
+        checkOwner(conversation, userId);
+        final List<String> existingCollections = conversation.getCollections();
         final List<String> collectionNames = new ArrayList<>();
 
         for (final String collId: collections) {
@@ -233,23 +317,23 @@ public class ConversationServiceImpl implements ConversationService {
           final Index item = collectionList.stream().filter(elt -> elt.getId().equals(collId)).findFirst().orElse(null);
 
           if (item == null) {
-            return Mono.error(new IllegalArgumentException(String.format("Collection %c %s %c not found!", 171, collId, 187)));
+            throw new IllegalArgumentException(String.format("Collection %c %s %c not found!", 171, collId, 187));
           }
           else if (existingCollections.contains(item.getId())) {
-            return Mono.error(new IllegalArgumentException(String.format("Collection %c %s %c already added!", 171, item.getName(), 187)));
+            throw new IllegalArgumentException(String.format("Collection %c %s %c already added!", 171, item.getName(), 187));
           }
 
           collectionNames.add(item.getName());
         }
 
-        final List<Message> history = conversation.getHistory();
+        final List<Message> messages = new ArrayList<>();
         final int collectionSize = collectionNames.size();
 
         if (collectionSize > 0) {
 
           final String allNames = String.join(", ", collectionNames),
           pluralStr = collectionSize > 1 ? "s" : "";
-          history.add(new Message(
+          messages.add(new Message(
             "system",
             newConversation
             ? String.format("Conversation started with %d collection%s: %s", collectionSize, pluralStr, allNames)
@@ -260,9 +344,49 @@ public class ConversationServiceImpl implements ConversationService {
 
         conversation
           .setCollections(existingCollections)
-          .setHistory(history)
           .setUpdatedAt(Utils.getTimestamp());
-        return conversationRepository.save(conversation);
-      });
+        return messages;
+      }))
+      .doOnNext(saved -> processorPrefetchService.prefetch(collectionList)); // Questions are coming
+  }
+
+  /**
+   * Conversations of other users are reported as not found
+   */
+  private static void checkOwner(final Conversation conversation, final String userId) throws ConversationNotFoundException {
+
+    if (userId == null || !userId.equals(conversation.getUserId())) {
+      throw new ConversationNotFoundException();
+    }
+  }
+
+  /**
+   * Get the conversation header, without its messages. Legacy documents are migrated on the fly.
+   */
+  private Mono<Conversation> getHeader(final String conversationId) {
+
+    return conversationRepository
+      .findById(conversationId)
+      .switchIfEmpty(Mono.error(new ConversationNotFoundException()))
+      .flatMap(messageService::migrate);
+  }
+
+  private Mono<Conversation> getHeader(final String conversationId, final String userId) {
+
+    return conversationRepository
+      .findByIdAndUserId(conversationId, userId)
+      .switchIfEmpty(Mono.error(new ConversationNotFoundException()))
+      .flatMap(messageService::migrate);
+  }
+
+  /**
+   * Load the messages subcollection into the history of the conversation, for responses only
+   */
+  private Mono<Conversation> withHistory(final Conversation conversation) {
+
+    return messageService
+      .getMessages(conversation.getId())
+      .collectList()
+      .map(conversation::setHistory);
   }
 }
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2025 Aion Sigma Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hermes.service.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.hermes.model.Conversation;
+import com.hermes.model.Message;
+import com.hermes.service.ConversationUpdateService;
+import com.hermes.service.MessageService;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+/**
+ * Updates of the conversations, serialized through a mailbox per conversation.
+ *
+ * <p>The updates of a conversation are applied one after the other, in the order they were received. The updates
+ * waiting while a write is running are merged: they are applied to the same header and saved with a single write.
+ * Each write reads the header in its transaction, so the updates always apply to the stored header, including the
+ * changes written by the other nodes.
+ */
+@Service
+@Slf4j
+public class ConversationUpdateServiceImpl implements ConversationUpdateService {
+
+  @Value("${hermes.conversation.updates.max-batch:50}")
+  private int maxBatch;
+
+  private record Pending(Update update, boolean clear, Sinks.One<Conversation> result) {}
+
+  private record Rejection(Pending pending, Exception error) {}
+
+  /** Updates of a batch applied to the header: the messages to append, and the callers to answer once saved */
+  private record Batch(List<Message> messages, List<Pending> accepted, List<Rejection> rejected) {}
+
+  /** Waiting updates by conversation, the conversations being written are the keys */
+  private final Map<String, Deque<Pending>> mailboxes = new HashMap<>();
+
+  private final MessageService messageService;
+
+  private final DistributionSummary batchSizes;
+
+  public ConversationUpdateServiceImpl(final MessageService messageService, final MeterRegistry meterRegistry) {
+    this.messageService = messageService;
+    this.batchSizes = DistributionSummary.builder("hermes.conversation.updates.batch")
+      .description("Updates of a conversation saved with a single write")
+      .register(meterRegistry);
+  }
+
+  @Override
+  public Mono<Conversation> update(final String conversationId, final Update update) {
+    return this.enqueue(conversationId, new Pending(update, false, Sinks.one()));
+  }
+
+  @Override
+  public Mono<Conversation> clear(final String conversationId, final Update update) {
+    return this.enqueue(conversationId, new Pending(update, true, Sinks.one()));
+  }
+
+  private Mono<Conversation> enqueue(final String conversationId, final Pending pending) {
+
+    return Mono.defer(() -> {
+
+      final boolean idle;
+      synchronized (mailboxes) {
+        idle = !mailboxes.containsKey(conversationId);
+        mailboxes.computeIfAbsent(conversationId, id -> new ArrayDeque<>()).addLast(pending);
+      }
+
+      // The update is applied even if the caller goes away (write-behind)
+      if (idle) {
+        this.drain(conversationId);
+      }
+      return pending.result().asMono();
+    });
+  }
+
+  /**
+   * Write the waiting updates of the conversation, then the ones received meanwhile, until the mailbox is empty
+   */
+  private void drain(final String conversationId) {
+
+    final List<Pending> pending = new ArrayList<>();
+    synchronized (mailboxes) {
+
+      final Deque<Pending> mailbox = mailboxes.get(conversationId);
+      while (pending.size() < maxBatch && !mailbox.isEmpty()) {
+        pending.add(mailbox.pollFirst());
+      }
+
+      if (pending.isEmpty()) {
+        mailboxes.remove(conversationId);
+        return;
+      }
+    }
+
+    batchSizes.record(pending.size());
+
+    // The transaction can be retried: the batch of the last attempt is the one written
+    final AtomicReference<Batch> written = new AtomicReference<>();
+    final boolean clear = pending.stream().anyMatch(Pending::clear);
+
+    (clear ? messageService.deleteAll(conversationId) : Mono.<Void>empty())
+      .then(messageService.update(conversationId, header -> {
+        final Batch batch = this.apply(header, pending);
+        written.set(batch);
+        return batch.messages();
+      }))
+      .doFinally(signal -> this.drain(conversationId))
+      .subscribe(saved -> {
+        final Batch batch = written.get();
+        batch.rejected().forEach(rejection -> rejection.pending().result().tryEmitError(rejection.error()));
+        batch.accepted().forEach(item -> item.result().tryEmitValue(copy(saved)));
+      }, error -> {
+        log.error("Update of conversation [{}] failed: {}", conversationId, error.getMessage());
+        pending.forEach(item -> item.result().tryEmitError(error));
+      });
+  }
+
+  /**
+   * Apply the updates in order. A rejected update fails its caller only, the header is left as it was before it.
+   */
+  private Batch apply(final Conversation header, final List<Pending> pending) {
+
+    final List<Message> messages = new ArrayList<>();
+    final List<Pending> accepted = new ArrayList<>();
+    final List<Rejection> rejected = new ArrayList<>();
+
+    if (header.getCollections() == null) {
+      header.setCollections(new ArrayList<>());
+    }
+
+    for (final Pending item: pending) {
+
+      final Conversation before = copy(header);
+      final List<Message> added;
+      try {
+        added = item.update().apply(header);
+      }
+      catch (Exception e) {
+        restore(header, before);
+        rejected.add(new Rejection(item, e));
+        continue;
+      }
+
+      // Messages appended before the clear in this batch are never written
+      if (item.clear()) {
+        header
+          .setMessageCount(0)
+          .setLastMessage(null);
+        messages.clear();
+      }
+      else if (added != null) {
+        messages.addAll(added);
+      }
+
+      accepted.add(item);
+    }
+
+    return new Batch(messages, accepted, rejected);
+  }
+
+  /**
+   * Copy of the header: the updates and the callers never share the same instance
+   */
+  private static Conversation copy(final Conversation conversation) {
+    return restore(new Conversation(), conversation);
+  }
+
+  private static Conversation restore(final Conversation target, final Conversation source) {
+
+    return target
+      .setId(source.getId())
+      .setTitle(source.getTitle())
+      .setUserId(source.getUserId())
+      .setHistory(source.getHistory() != null ? new ArrayList<>(source.getHistory()) : new ArrayList<>())
+      .setCollections(source.getCollections() != null ? new ArrayList<>(source.getCollections()) : new ArrayList<>())
+      .setMessageCount(source.getMessageCount())
+      .setLastMessage(source.getLastMessage())
+      .setUpdatedAt(source.getUpdatedAt());
+  }
+}
@@ -16,42 +16,71 @@
 package com.hermes.service.impl;
 
 import com.google.auth.oauth2.GoogleCredentials;
+import com.google.cloud.WriteChannel;
 import com.google.cloud.storage.Blob;
 import com.google.cloud.storage.BlobId;
 import com.google.cloud.storage.BlobInfo;
 import com.google.cloud.storage.Storage;
 import com.google.cloud.storage.StorageOptions;
+import com.google.cloud.spring.data.firestore.FirestoreTemplate;
+import com.google.firestore.v1.StructuredQuery;
+import com.google.firestore.v1.StructuredQuery.CompositeFilter;
+import com.google.firestore.v1.StructuredQuery.FieldFilter;
+import com.google.firestore.v1.StructuredQuery.FieldReference;
+import com.google.firestore.v1.StructuredQuery.Filter;
+import com.google.firestore.v1.StructuredQuery.Order;
+import com.google.protobuf.Int32Value;
 import com.hermes.data.DateComparator;
 import com.hermes.data.FileStatus;
 import com.hermes.data.PagedResult;
+import com.hermes.data.UploadResult;
 import com.hermes.exceptions.FileInUseException;
 import com.hermes.exceptions.InvalidFilesException;
 import com.hermes.exceptions.InvalidOperationException;
 import com.hermes.exceptions.NotFoundException;
-import com.hermes.exceptions.UploadFailedException;
-import com.hermes.repository.IndexRepository;
+import com.hermes.model.FileMetadata;
+import com.hermes.model.Lease;
+import com.hermes.repository.FileMetadataRepository;
+import com.hermes.repository.FileUsageRepository;
+import com.hermes.repository.LeaseRepository;
 import com.hermes.service.FileService;
+import com.hermes.service.LeaseService;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Sort.Direction;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDate;
 import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 @Service
@@ -64,10 +93,96 @@ public class FileServiceImpl implements FileService {
   @Value("${gcp.credentials}")
   private String credentialsFile;
 
+  @Value("${hermes.files.catalog.lease-seconds:7200}")
+  private long catalogLeaseSeconds;
+
+  @Value("${hermes.upload.concurrency.node:8}")
+  private int nodeUploadConcurrency;
+
+  @Value("${hermes.upload.concurrency.user:3}")
+  private int userUploadConcurrency;
+
+  /** Uploads running on this node */
+  private PermitQueue nodeUploadPermits;
+
+  /** Uploads running for each user, across requests */
+  private PermitQueue userUploadPermits;
+
   private Storage storage;
 
   @Autowired
-  private IndexRepository indexRepository;
+  private FileUsageRepository fileUsageRepository;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Autowired
+  private FileMetadataRepository fileMetadataRepository;
+
+  @Autowired
+  private LeaseRepository leaseRepository;
+
+  @Autowired
+  private LeaseService leaseService;
+
+  @Autowired
+  private FirestoreTemplate firestoreTemplate;
+
+  @Autowired
+  private PageCursorHelper pageCursorHelper;
+
+  /** Set once the catalog was reconciled with the bucket: until then, filters list the bucket */
+  private final AtomicBoolean catalogReady = new AtomicBoolean(false);
+
+  private final AtomicBoolean catalogSyncing = new AtomicBoolean(false);
+
+  private static final String USER_ID_FIELD = "userId";
+
+  private static final String STATUS_FIELD = "status";
+
+  private static final String CREATE_TIME_FIELD = "createTime";
+
+  private static final String SEARCH_TOKENS_FIELD = "searchTokens";
+
+  /** Longest substrings indexed for text search, longer searches are checked on the entries found */
+  private static final int SEARCH_TOKEN_MAX_LENGTH = 3;
+
+  private static final String CATALOG_COLLECTION = "files";
+
+  /** Entries read per query when Firestore can't sort or filter them all, and they are searched in memory */
+  private static final int SCAN_BATCH_SIZE = 500;
+
+  /** Renamed when the catalog entries change, so that the catalog is used once synchronized again */
+  private static final String CATALOG_LEASE = "files-catalog-sync-ngrams";
+
+  /** Catalog fields of the sortBy values */
+  private static final Map<String, String> SORT_FIELDS = Map.of(
+    "name", "lowercaseOriginalName",
+    "size", "sizeInBytes",
+    "updateTime", "updateTime",
+    "createTime", CREATE_TIME_FIELD
+  );
+
+  /** Maximum number of blobs per GCS batch request */
+  private static final int BLOB_BATCH_SIZE = 100;
+
+  /** Maximum number of GCS batch requests running at the same time */
+  private static final int BLOB_BATCH_CONCURRENCY = 4;
+
+  /** Size of the buffer used to read an uploaded file */
+  private static final int UPLOAD_BUFFER_SIZE = 64 * 1024;
+
+  /** Size of the chunks sent to GCS, must be a multiple of 256 KiB */
+  private static final int UPLOAD_CHUNK_SIZE = 1024 * 1024;
+
+  /** Key of the node upload permits */
+  private static final String NODE_PERMITS = "node";
+
+  @PostConstruct
+  private void initUploadPermits() {
+    nodeUploadPermits = new PermitQueue(nodeUploadConcurrency);
+    userUploadPermits = new PermitQueue(userUploadConcurrency);
+  }
 
   private void initStorage() throws IOException {
     if (storage == null) {
@@ -79,43 +194,87 @@ public class FileServiceImpl implements FileService {
   }
 
   @Override
-  public Mono<List<String>> validateFileIds(final List<String> fileIds, final String userId) throws InvalidOperationException {
+  public Flux<UploadResult> uploadFiles(final List<MultipartFile> files, final String userId) {
 
-    final List<String> invalidFileIds = new ArrayList<>();
+    // Permits are always taken in the same order (user, then node). Waiting uploads don't hold a thread.
+    return Flux.fromIterable(files)
+      .flatMap(file -> userUploadPermits.withPermit(userId,
+        nodeUploadPermits.withPermit(NODE_PERMITS, this.uploadFile(file, userId))),
+        userUploadConcurrency);
+  }
 
-    final String folder = "users/" + userId + "/";
-    for (String fileId : fileIds) {
-      if (!fileExistsInStorage(folder + fileId)) {
-        invalidFileIds.add(fileId);
-      }
-    }
+  @Override
+  public Mono<UploadResult> uploadFile(final MultipartFile file, final String userId) {
 
-    if (!invalidFileIds.isEmpty()) {
-      return Mono.error(new InvalidFilesException());
-    }
+    return Mono.defer(() -> {
+
+      final long start = System.currentTimeMillis();
+      final UploadResult result = new UploadResult().setOriginalName(file.getOriginalFilename());
 
-    return Mono.just(fileIds);
+      return Mono.fromCallable(() -> this.doUploadFile(file, userId, result))
+        .subscribeOn(Schedulers.boundedElastic())
+        .flatMap(r -> this.addToCatalog(r, userId))
+        .onErrorResume(e -> {
+          log.error("Error uploading file [{}]: {}", file.getOriginalFilename(), e.getMessage());
+          return Mono.just(result.setSuccess(false).setError("Error uploading file: " + e.getMessage()));
+        })
+        .map(r -> r.setDurationMs(System.currentTimeMillis() - start));
+    });
   }
 
-  @Override
-  public Mono<String> uploadFile(final MultipartFile file, final String userId) {
+  /**
+   * Stream the file to GCS in chunks: the heap used doesn't depend on the file size. The blob is deleted if its MD5
+   * differs from the one of the bytes read.
+   */
+  private UploadResult doUploadFile(final MultipartFile file, final String userId, final UploadResult result)
+  throws IOException, NoSuchAlgorithmException {
 
-    try {
+    initStorage();
 
-      initStorage();
+    final String folder = "users/" + userId + "/",
+    fileName = UUID.randomUUID() + "-" + file.getOriginalFilename(),
+    fullPath = folder + fileName;
 
-      final String folder = "users/" + userId + "/",
-      fileName = UUID.randomUUID() + "-" + file.getOriginalFilename(),
-      fullPath = folder + fileName;
+    final BlobId blobId = BlobId.of(bucketName, fullPath);
+    final BlobInfo blobInfo = BlobInfo.newBuilder(blobId).setContentType(file.getContentType()).build();
+
+    final MessageDigest md5 = MessageDigest.getInstance("MD5");
+    long size = 0;
+
+    try (WriteChannel writer = storage.writer(blobInfo); InputStream input = file.getInputStream()) {
+
+      writer.setChunkSize(UPLOAD_CHUNK_SIZE);
+      final byte[] buffer = new byte[UPLOAD_BUFFER_SIZE];
+
+      int read;
+      while ((read = input.read(buffer)) != -1) {
 
-      final BlobId blobId = BlobId.of(bucketName, fullPath);
-      final BlobInfo blobInfo = BlobInfo.newBuilder(blobId).setContentType(file.getContentType()).build();
-      storage.create(blobInfo, file.getBytes());
-      return Mono.just(fileName);
+        md5.update(buffer, 0, read);
+        size += read;
+
+        final ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, read);
+        while (chunk.hasRemaining()) {
+          writer.write(chunk);
+        }
+      }
     }
-    catch (IOException e) {
-      return Mono.error(new UploadFailedException("Error uploading file: " + e.getMessage()));
+
+    final String checksum = HexFormat.of().formatHex(md5.digest());
+    final Blob blob = storage.get(blobId, Storage.BlobGetOption.fields(Storage.BlobField.MD5HASH));
+    final String storedChecksum = blob != null ? blob.getMd5ToHexString() : null;
+
+    if (!checksum.equalsIgnoreCase(storedChecksum)) {
+      log.error("Checksum mismatch for file [{}]: MD5 {} read, {} stored", fullPath, checksum, storedChecksum);
+      storage.delete(blobId);
+      throw new IOException("Checksum mismatch");
     }
+    log.info("File uploaded [{}]: {} bytes, MD5: {}", fullPath, size, checksum);
+
+    return result
+      .setName(fileName)
+      .setSuccess(true)
+      .setSizeInBytes(size)
+      .setChecksum(checksum);
   }
 
   @Override
@@ -147,12 +306,247 @@ public class FileServiceImpl implements FileService {
 
   /**
    * Gets a paginated, sorted, and filtered list of files for a given user.
-   * 
-   * <p>The filters are applied here as Google Cloud Storage does not offer built-in query capabilities for metadata
+   *
+   * <p>The files are queried from the catalog. Text search finds the names and keywords containing the text, as
+   * before the catalog: it looks up the first indexed substring of the text. Searching more than that, and sorting
+   * on another field than a date range, can't be done by Firestore: they are applied
+   * here on all the entries matching the other filters, read in batches.
+   *
+   * <p>The status of the files being processed is only known from their blobs: it is refreshed in the catalog
+   * before filtering on it.
    */
   @Override
   public Mono<PagedResult<Map<String, Object>>> filter(final String userId, final String q, final LocalDate date,
   final DateComparator dateCmp, final FileStatus status, final String sortBy, final Direction direction,
+  final int page, final int size) {
+
+    if (!catalogReady.get()) {
+      return this.filterFromStorage(userId, q, date, dateCmp, status, sortBy, direction, page, size);
+    }
+
+    final Mono<Void> statusRefreshed = status != FileStatus.ALL ? refreshProcessingStatus(userId) : Mono.empty();
+    return statusRefreshed.then(Mono.defer(() -> filterCatalog(userId, q, date, dateCmp, status, sortBy, direction,
+      page, size)));
+  }
+
+  private Mono<PagedResult<Map<String, Object>>> filterCatalog(final String userId, final String q, final LocalDate date,
+  final DateComparator dateCmp, final FileStatus status, final String sortBy, final Direction direction,
+  final int page, final int size) {
+
+    final List<Filter> filters = new ArrayList<>();
+    filters.add(fieldFilter(USER_ID_FIELD, FieldFilter.Operator.EQUAL,
+      com.google.firestore.v1.Value.newBuilder().setStringValue(userId).build()));
+
+    if (status != FileStatus.ALL) {
+      filters.add(fieldFilter(STATUS_FIELD, FieldFilter.Operator.EQUAL,
+        com.google.firestore.v1.Value.newBuilder().setStringValue(status.name()).build()));
+    }
+
+    final DateComparator cmp = dateCmp == null ? DateComparator.EQ : dateCmp;
+    final boolean hasDateFilter = date != null && cmp != DateComparator.NONE;
+    if (hasDateFilter) {
+      filters.add(dateFilter(date, cmp));
+    }
+
+    // Text search: the start of the text is looked up in the indexed substrings, the whole text is checked on the
+    // entries found
+    final String text = q != null ? q.trim().toLowerCase() : "";
+    if (!text.isEmpty()) {
+      filters.add(fieldFilter(SEARCH_TOKENS_FIELD, FieldFilter.Operator.ARRAY_CONTAINS,
+        com.google.firestore.v1.Value.newBuilder().setStringValue(toSearchToken(text)).build()));
+    }
+    final boolean hasTextFilter = text.length() > SEARCH_TOKEN_MAX_LENGTH;
+
+    final StructuredQuery.Builder queryBuilder = StructuredQuery.newBuilder()
+      .setWhere(Filter.newBuilder()
+        .setCompositeFilter(CompositeFilter.newBuilder()
+        .setOp(CompositeFilter.Operator.AND)
+        .addAllFilters(filters)));
+
+    final String sortField = sortBy != null ? SORT_FIELDS.get(sortBy) : null;
+
+    if (hasTextFilter || (hasDateFilter && sortField != null && !sortField.equals(CREATE_TIME_FIELD))) {
+
+      return scanCatalog(queryBuilder, hasDateFilter)
+        .filter(entry -> !hasTextFilter || matchesText(entry, text))
+        .collectList()
+        .flatMap(entries -> {
+
+          final Comparator<FileMetadata> comparator = sortBy != null ? catalogComparator(sortBy) : null;
+          if (comparator != null) {
+            entries.sort(direction == Direction.ASC ? comparator : comparator.reversed());
+          }
+
+          final List<FileMetadata> pageEntries = entries.stream()
+            .skip((long) page * size)
+            .limit(size)
+            .toList();
+
+          return refreshCatalogStatus(pageEntries, userId)
+            .map(fileDetails -> new PagedResult<>(fileDetails, entries.size(), size, page));
+        });
+    }
+
+    // Composite indexes (userId, status, searchTokens, sort field): see firestore.indexes.json
+    final Mono<Long> totalCountMono = firestoreTemplate.count(FileMetadata.class, queryBuilder.clone())
+      .defaultIfEmpty(0L);
+
+    if (sortField != null) {
+      queryBuilder.addOrderBy(Order.newBuilder()
+        .setField(FieldReference.newBuilder().setFieldPath(sortField))
+        .setDirection(direction == Direction.ASC ? StructuredQuery.Direction.ASCENDING : StructuredQuery.Direction.DESCENDING));
+    }
+    queryBuilder
+      .setOffset(page * size)
+      .setLimit(Int32Value.of(size));
+
+    return Mono.zip(firestoreTemplate.execute(queryBuilder, FileMetadata.class).collectList(), totalCountMono)
+      .flatMap(tuple -> refreshCatalogStatus(tuple.getT1(), userId)
+        .map(fileDetails -> new PagedResult<>(fileDetails, tuple.getT2(), size, page)));
+  }
+
+  /**
+   * Read all the entries of the query, SCAN_BATCH_SIZE at a time: each batch starts after the last entry of the
+   * previous one. Ordered by document ID, after the creation time when the query has a range on it.
+   */
+  private Flux<FileMetadata> scanCatalog(final StructuredQuery.Builder queryBuilder, final boolean byCreateTime) {
+
+    if (byCreateTime) {
+      queryBuilder.addOrderBy(Order.newBuilder()
+        .setField(FieldReference.newBuilder().setFieldPath(CREATE_TIME_FIELD))
+        .setDirection(StructuredQuery.Direction.ASCENDING));
+    }
+    queryBuilder
+      .addOrderBy(Order.newBuilder()
+        .setField(FieldReference.newBuilder().setFieldPath(PageCursorHelper.DOCUMENT_ID_FIELD))
+        .setDirection(StructuredQuery.Direction.ASCENDING))
+      .setLimit(Int32Value.of(SCAN_BATCH_SIZE));
+
+    return firestoreTemplate.execute(queryBuilder.clone(), FileMetadata.class)
+      .collectList()
+      .expand(batch -> {
+
+        if (batch.size() < SCAN_BATCH_SIZE) return Mono.empty();
+
+        final FileMetadata last = batch.get(batch.size() - 1);
+        final com.google.firestore.v1.Value[] values = byCreateTime
+          ? new com.google.firestore.v1.Value[] {
+            com.google.firestore.v1.Value.newBuilder().setIntegerValue(last.getCreateTime()).build() }
+          : new com.google.firestore.v1.Value[0];
+
+        return firestoreTemplate.execute(queryBuilder.clone()
+            .setStartAt(pageCursorHelper.startAfter(CATALOG_COLLECTION, last.getId(), values)), FileMetadata.class)
+          .collectList();
+      })
+      .flatMapIterable(batch -> batch);
+  }
+
+  /**
+   * Reconcile the catalog with the bucket: add or update the entries of the blobs, remove the others.
+   *
+   * <p>Uploads and deletions update the catalog themselves, this only repairs it. A single node runs it, the owner
+   * of the catalog lease, one user folder at a time, extending the lease after each one: the sync stops if another
+   * node took it. Entries added after a folder was listed are never removed.
+   */
+  @Scheduled(
+    initialDelayString = "${hermes.files.catalog.sync-initial-delay-ms:0}",
+    fixedDelayString = "${hermes.files.catalog.sync-interval-ms:3600000}"
+  )
+  public void syncCatalog() {
+
+    if (!catalogSyncing.compareAndSet(false, true)) return;
+
+    // The catalog is ready on all the nodes once a synchronization completed
+    leaseRepository.findById(CATALOG_LEASE)
+      .filter(lease -> lease.getCompletedAt() != null)
+      .doOnNext(lease -> catalogReady.set(true))
+      .then(leaseService.acquire(CATALOG_LEASE, catalogLeaseSeconds))
+      .flatMap(lease -> this.reconcileCatalog(lease)
+        .then(Mono.defer(() -> leaseService.save(lease.setCompletedAt(Utils.getTimestamp()), catalogLeaseSeconds))))
+      .doFinally(signal -> catalogSyncing.set(false))
+      .subscribe(
+        lease -> catalogReady.set(true),
+        e -> log.error("File catalog synchronization: {}", e.getMessage())
+      );
+  }
+
+  private Mono<Void> reconcileCatalog(final Lease lease) {
+
+    final AtomicLong total = new AtomicLong(), updated = new AtomicLong(), removed = new AtomicLong();
+
+    return Mono.fromCallable(() -> {
+
+        initStorage();
+
+        // The user folders, without their blobs
+        final List<String> userIds = new ArrayList<>();
+        for (final Blob blob: storage.list(bucketName, Storage.BlobListOption.prefix("users/"),
+          Storage.BlobListOption.currentDirectory()).iterateAll()) {
+
+          final String[] parts = blob.getName().split("/");
+          if (blob.isDirectory() && parts.length == 2) {
+            userIds.add(parts[1]);
+          }
+        }
+        return userIds;
+      })
+      .subscribeOn(Schedulers.boundedElastic())
+      .flatMapIterable(userIds -> userIds)
+      .concatMap(userId -> this.reconcileUserCatalog(userId, total, updated, removed)
+        .then(Mono.defer(() -> leaseService.save(lease, catalogLeaseSeconds))))
+      .then(Mono.fromRunnable(() -> log.info("File catalog synchronized: Total: {}, Updated: {}, Removed: {}",
+        total.get(), updated.get(), removed.get())));
+  }
+
+  private Mono<Void> reconcileUserCatalog(final String userId, final AtomicLong total, final AtomicLong updated,
+  final AtomicLong removed) {
+
+    final String folder = "users/" + userId + "/";
+    final long listedAt = Utils.getTimestamp();
+
+    return Mono.fromCallable(() -> {
+
+        final Map<String, FileMetadata> entries = new HashMap<>();
+        for (final Blob blob: storage.list(bucketName, Storage.BlobListOption.prefix(folder)).iterateAll()) {
+
+          final String fileName = blob.getName().substring(folder.length());
+          if (!fileName.isEmpty() && !fileName.contains("/")) {
+            entries.put(fileName, toCatalogEntry(blob, userId, fileName));
+          }
+        }
+        return entries;
+      })
+      .subscribeOn(Schedulers.boundedElastic())
+      .flatMap(entries -> fileMetadataRepository
+        .findByUserId(userId)
+        .collectMap(FileMetadata::getId)
+        .flatMap(existing -> {
+
+          final List<FileMetadata> changed = entries.values().stream()
+            .filter(entry -> !entry.equals(existing.get(entry.getId())))
+            .toList();
+
+          // Uploads can add an entry after the listing: only the older ones are gone
+          final List<String> gone = existing.values().stream()
+            .filter(entry -> !entries.containsKey(entry.getId()))
+            .filter(entry -> entry.getCreateTime() == null || entry.getCreateTime() < listedAt)
+            .map(FileMetadata::getId)
+            .toList();
+
+          total.addAndGet(entries.size());
+          updated.addAndGet(changed.size());
+          removed.addAndGet(gone.size());
+
+          return fileMetadataRepository.saveAll(changed)
+            .then(fileMetadataRepository.deleteAllById(gone));
+        }));
+  }
+
+  /**
+   * Filter the files by listing the bucket, used until the catalog is ready
+   */
+  private Mono<PagedResult<Map<String, Object>>> filterFromStorage(final String userId, final String q, final LocalDate date,
+  final DateComparator dateCmp, final FileStatus status, final String sortBy, final Direction direction,
   final int page, final int size) {
 
     try {
@@ -237,9 +631,9 @@ public class FileServiceImpl implements FileService {
   @Override
   public Mono<String> deleteFile(final String fileId, final String userId) {
 
-    return indexRepository.findAll()
-    .filter(index -> index.getFiles().containsKey(fileId))
-    .hasElements()
+    return fileUsageRepository.findById(fileId)
+    .map(usage -> usage.getCollections() != null && !usage.getCollections().isEmpty())
+    .defaultIfEmpty(false)
     .flatMap(isInIndex -> {
       if (isInIndex) {
         return Mono.error(new FileInUseException());
@@ -257,7 +651,9 @@ public class FileServiceImpl implements FileService {
 
         final boolean deleted = storage.delete(blob.getBlobId());
         if (deleted) {
-          return Mono.just("File deleted successfully");
+          return fileUsageRepository.deleteById(fileId)
+            .then(fileMetadataRepository.deleteById(fileId))
+            .then(Mono.just("File deleted successfully"));
         }
         else {
           return Mono.error(new InvalidOperationException("Error deleting file"));
@@ -289,11 +685,37 @@ public class FileServiceImpl implements FileService {
     }
   }
 
+  @Override
+  public Mono<Map<String, String>> getFileChecksums(final List<String> fileIds, final String userId) {
+
+    return getBlobs(fileIds, userId)
+      .flatMap(blobs -> {
+
+        final List<String> invalidFileIds = getMissingFileIds(fileIds, blobs);
+        if (!invalidFileIds.isEmpty()) {
+          return Mono.error(new InvalidFilesException(invalidFileIds));
+        }
+
+        final Map<String, String> checksums = new HashMap<>();
+        fileIds.forEach(fileId -> checksums.put(fileId, blobs.get(fileId).getMd5ToHexString()));
+        return Mono.just(checksums);
+      });
+  }
+
   @Override
   public Mono<Map<String, Object>> getFile(final String fileId, final String userId) {
 
     try {
-      return Mono.just(getFileData(fileId, userId));
+      final Map<String, Object> details = getFileData(fileId, userId);
+
+      // Number of collections using the file, from the reverse index
+      return fileUsageRepository.findById(fileId)
+        .map(usage -> usage.getCollections() == null ? 0 : usage.getCollections().size())
+        .defaultIfEmpty(0)
+        .map(usedBy -> {
+          details.put("usedByCollections", usedBy);
+          return details;
+        });
     }
     catch (NotFoundException e) {
       return Mono.error(new NotFoundException(e.getMessage()));
@@ -346,16 +768,253 @@ public class FileServiceImpl implements FileService {
     return result;
   }
 
-  private boolean fileExistsInStorage(final String fileId) throws InvalidOperationException {
+  /**
+   * Get the blobs of the files with batched requests, run in parallel on the I/O scheduler.
+   * Missing files are absent from the result.
+   */
+  private Mono<Map<String, Blob>> getBlobs(final List<String> fileIds, final String userId) {
+
+    final String folder = "users/" + userId + "/";
+
+    return Flux.fromIterable(fileIds)
+      .distinct()
+      .buffer(BLOB_BATCH_SIZE)
+      .flatMap(batch -> Mono.fromCallable(() -> {
+
+          initStorage();
+
+          // Results are in the same order as the requested IDs, null when the blob doesn't exist
+          final List<Blob> blobs = meterRegistry.timer("hermes.storage.batch.get").recordCallable(() ->
+            storage.get(batch.stream().map(fileId -> BlobId.of(bucketName, folder + fileId)).toList())
+          );
+
+          final Map<String, Blob> found = new HashMap<>();
+          for (int i = 0; i < batch.size(); i++) {
+            if (blobs.get(i) != null) {
+              found.put(batch.get(i), blobs.get(i));
+            }
+          }
+          return found;
+        })
+        .subscribeOn(Schedulers.boundedElastic()),
+        BLOB_BATCH_CONCURRENCY
+      )
+      .onErrorMap(IOException.class, e -> new InvalidOperationException("Error initializing storage: " + e.getMessage()))
+      .collect(HashMap::new, Map::putAll);
+  }
+
+  /**
+   * Add a file to the catalog once uploaded. A catalog failure doesn't fail the upload, the next
+   * synchronization adds the file.
+   */
+  private Mono<UploadResult> addToCatalog(final UploadResult result, final String userId) {
+
+    final long now = Utils.getTimestamp();
+    final FileMetadata entry = new FileMetadata()
+      .setId(result.getName())
+      .setUserId(userId)
+      .setOriginalName(result.getOriginalName())
+      .setLowercaseOriginalName(result.getOriginalName() != null ? result.getOriginalName().toLowerCase() : null)
+      .setSearchTokens(searchTokens(result.getOriginalName(), null))
+      .setSizeInBytes(result.getSizeInBytes())
+      .setChecksum(result.getChecksum())
+      .setCreateTime(now)
+      .setUpdateTime(now)
+      .setStatus(FileStatus.PENDING);
+
+    return fileMetadataRepository.save(entry)
+      .thenReturn(result)
+      .onErrorResume(e -> {
+        log.error("Error adding file [{}] to the catalog: {}", result.getName(), e.getMessage());
+        return Mono.just(result);
+      });
+  }
+
+  /**
+   * Get the details of the catalog entries, with the status of the files being processed refreshed
+   */
+  private Mono<List<Map<String, Object>>> refreshCatalogStatus(final List<FileMetadata> entries, final String userId) {
+    return refreshStatus(entries, userId).map(refreshed -> refreshed.stream().map(this::getCatalogDetails).toList());
+  }
+
+  /**
+   * Refresh the status of all the files of the user being processed, so that filtering on the status finds them
+   */
+  private Mono<Void> refreshProcessingStatus(final String userId) {
+
+    return fileMetadataRepository
+      .findByUserIdAndStatusIn(userId, List.of(FileStatus.PENDING, FileStatus.PROCESSING))
+      .collectList()
+      .flatMap(entries -> refreshStatus(entries, userId))
+      .then();
+  }
+
+  /**
+   * Read the status of the files still being processed from the blobs, and update it in the catalog when it changed
+   */
+  private Mono<List<FileMetadata>> refreshStatus(final List<FileMetadata> entries, final String userId) {
+
+    final List<String> pendingIds = entries.stream()
+      .filter(entry -> entry.getStatus() == FileStatus.PENDING || entry.getStatus() == FileStatus.PROCESSING)
+      .map(FileMetadata::getId)
+      .toList();
+
+    final Mono<Map<String, Blob>> blobsMono = pendingIds.isEmpty()
+      ? Mono.just(Map.<String, Blob>of())
+      : getBlobs(pendingIds, userId).onErrorResume(e -> Mono.just(Map.<String, Blob>of()));
+
+    return blobsMono.flatMap(blobs -> {
+
+      final List<FileMetadata> refreshed = new ArrayList<>(), changed = new ArrayList<>();
+      for (final FileMetadata entry: entries) {
+
+        final Blob blob = blobs.get(entry.getId());
+        final FileMetadata fresh = blob != null ? toCatalogEntry(blob, userId, entry.getId()) : entry;
+        if (!fresh.equals(entry)) {
+          changed.add(fresh);
+        }
+        refreshed.add(fresh);
+      }
+
+      return fileMetadataRepository.saveAll(changed).then(Mono.just(refreshed));
+    });
+  }
+
+  private FileMetadata toCatalogEntry(final Blob blob, final String userId, final String fileName) {
 
+    String originalName;
     try {
-      initStorage();
-      final Blob blob = storage.get(bucketName, fileId);
-      return blob != null && blob.exists();
+      originalName = extractOriginalName(fileName);
     }
-    catch (IOException e) {
-      throw new InvalidOperationException("Error initializing storage: " + e.getMessage());
+    catch (RuntimeException e) {
+      originalName = fileName;
     }
+
+    final Map<String, String> metadata = blob.getMetadata();
+
+    return new FileMetadata()
+      .setId(fileName)
+      .setUserId(userId)
+      .setOriginalName(originalName)
+      .setLowercaseOriginalName(originalName.toLowerCase())
+      .setSizeInBytes(blob.getSize())
+      .setChecksum(blob.getMd5ToHexString())
+      .setCreateTime(blob.getCreateTimeOffsetDateTime() != null ? blob.getCreateTimeOffsetDateTime().toEpochSecond() : null)
+      .setUpdateTime(blob.getUpdateTimeOffsetDateTime() != null ? blob.getUpdateTimeOffsetDateTime().toEpochSecond() : null)
+      .setStatus(getFileStatus(blob))
+      .setKeywords(metadata != null ? metadata.get("keywords") : null)
+      .setSearchTokens(searchTokens(originalName, metadata != null ? metadata.get("keywords") : null))
+      .setMetadata(metadata);
+  }
+
+  /**
+   * Same details as {@link #getFileDetails}, from the catalog
+   */
+  private Map<String, Object> getCatalogDetails(final FileMetadata entry) {
+
+    final Map<String, Object> details = new HashMap<>();
+    details.put("name", entry.getId());
+    details.put("originalName", entry.getOriginalName());
+    details.put("dateUploaded", entry.getCreateTime());
+    details.put("sizeInBytes", entry.getSizeInBytes());
+    details.put("sizeReadable", humanReadableByteCount(entry.getSizeInBytes()));
+    details.put("checksum", entry.getChecksum());
+    details.put("metadata", entry.getMetadata());
+
+    return details;
+  }
+
+  /**
+   * The name or keywords of the entry contain the text
+   */
+  private boolean matchesText(final FileMetadata entry, final String text) {
+    return (entry.getOriginalName() != null && entry.getOriginalName().toLowerCase().contains(text))
+      || (entry.getKeywords() != null && entry.getKeywords().toLowerCase().contains(text));
+  }
+
+  private static String toSearchToken(final String text) {
+    return text.length() > SEARCH_TOKEN_MAX_LENGTH ? text.substring(0, SEARCH_TOKEN_MAX_LENGTH) : text;
+  }
+
+  /**
+   * Substrings of up to SEARCH_TOKEN_MAX_LENGTH characters of the name and keywords: any text finds the files
+   * containing its start with a single lookup
+   */
+  private static List<String> searchTokens(final String originalName, final String keywords) {
+
+    final Set<String> tokens = new LinkedHashSet<>();
+    for (final String text: Arrays.asList(originalName, keywords)) {
+
+      if (text == null) continue;
+
+      final String lowercase = text.toLowerCase();
+      for (int start = 0; start < lowercase.length(); start++) {
+        for (int end = start + 1; end <= Math.min(lowercase.length(), start + SEARCH_TOKEN_MAX_LENGTH); end++) {
+          tokens.add(lowercase.substring(start, end));
+        }
+      }
+    }
+    return new ArrayList<>(tokens);
+  }
+
+  private Comparator<FileMetadata> catalogComparator(final String sortBy) {
+
+    return switch (sortBy) {
+      case "name" -> Comparator.comparing(FileMetadata::getOriginalName, String.CASE_INSENSITIVE_ORDER);
+      case "size" -> Comparator.comparingLong(FileMetadata::getSizeInBytes);
+      case "updateTime" -> Comparator.comparing(FileMetadata::getUpdateTime, Comparator.nullsLast(Long::compareTo));
+      case "createTime" -> Comparator.comparing(FileMetadata::getCreateTime, Comparator.nullsLast(Long::compareTo));
+      default -> null;
+    };
+  }
+
+  private Filter fieldFilter(final String field, final FieldFilter.Operator op, final com.google.firestore.v1.Value value) {
+
+    return Filter.newBuilder()
+      .setFieldFilter(FieldFilter.newBuilder()
+      .setField(FieldReference.newBuilder().setFieldPath(field))
+      .setOp(op)
+      .setValue(value))
+      .build();
+  }
+
+  /**
+   * Catalog filter equivalent to {@link #compareDateFilter}, on the UTC day of the creation time
+   */
+  private Filter dateFilter(final LocalDate date, final DateComparator dateComp) {
+
+    final com.google.firestore.v1.Value start = com.google.firestore.v1.Value.newBuilder()
+      .setIntegerValue(date.atStartOfDay(ZoneOffset.UTC).toEpochSecond()).build(),
+    end = com.google.firestore.v1.Value.newBuilder()
+      .setIntegerValue(date.plusDays(1).atStartOfDay(ZoneOffset.UTC).toEpochSecond() - 1).build();
+
+    return switch (dateComp) {
+      case DIFF -> Filter.newBuilder()
+        .setCompositeFilter(CompositeFilter.newBuilder()
+        .setOp(CompositeFilter.Operator.OR)
+        .addFilters(fieldFilter(CREATE_TIME_FIELD, FieldFilter.Operator.LESS_THAN, start))
+        .addFilters(fieldFilter(CREATE_TIME_FIELD, FieldFilter.Operator.GREATER_THAN, end)))
+        .build();
+
+      case GT -> fieldFilter(CREATE_TIME_FIELD, FieldFilter.Operator.GREATER_THAN, end);
+
+      case GTE -> fieldFilter(CREATE_TIME_FIELD, FieldFilter.Operator.GREATER_THAN_OR_EQUAL, start);
+
+      case LT -> fieldFilter(CREATE_TIME_FIELD, FieldFilter.Operator.LESS_THAN, start);
+
+      case LTE -> fieldFilter(CREATE_TIME_FIELD, FieldFilter.Operator.LESS_THAN_OR_EQUAL, end);
+
+      default -> Filter.newBuilder()
+        .setCompositeFilter(CompositeFilter.newBuilder()
+        .setOp(CompositeFilter.Operator.AND)
+        .addFilters(fieldFilter(CREATE_TIME_FIELD, FieldFilter.Operator.GREATER_THAN_OR_EQUAL, start))
+        .addFilters(fieldFilter(CREATE_TIME_FIELD, FieldFilter.Operator.LESS_THAN_OR_EQUAL, end)))
+        .build();
+    };
+  }
+
+  private List<String> getMissingFileIds(final List<String> fileIds, final Map<String, Blob> blobs) {
+    return fileIds.stream().filter(fileId -> !blobs.containsKey(fileId)).distinct().toList();
   }
 
   private String humanReadableByteCount(final long bytes) {
@@ -18,39 +18,49 @@ package com.hermes.service.impl;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
 
 import com.google.cloud.spring.data.firestore.FirestoreTemplate;
+import com.google.cloud.spring.data.firestore.transaction.ReactiveFirestoreTransactionManager;
 import com.google.firestore.v1.StructuredQuery;
 import com.google.firestore.v1.Value;
 import com.google.firestore.v1.StructuredQuery.Filter;
-import com.google.firestore.v1.StructuredQuery.Order;
-import com.google.protobuf.Int32Value;
-import com.google.firestore.v1.StructuredQuery.Direction;
 import com.google.firestore.v1.StructuredQuery.FieldFilter;
 import com.google.firestore.v1.StructuredQuery.FieldReference;
+import com.google.firestore.v1.StructuredQuery.Order;
+import com.google.protobuf.Int32Value;
 import com.hermes.data.CollectionPagedResult;
 import com.hermes.data.CollectionState;
 import com.hermes.data.DateComparator;
+import com.hermes.data.PageCursor;
 import com.hermes.data.PagedResult;
 import com.hermes.exceptions.IndexNotFoundException;
 import com.hermes.exceptions.InvalidOperationException;
-import com.hermes.model.Conversation;
+import com.hermes.model.FileUsage;
 import com.hermes.model.Index;
 import com.hermes.model.Message;
 import com.hermes.repository.ConversationRepository;
+import com.hermes.repository.FileUsageRepository;
 import com.hermes.repository.IndexRepository;
+import com.hermes.repository.LeaseRepository;
+import com.hermes.service.ConversationUpdateService;
 import com.hermes.service.FileService;
 import com.hermes.service.IndexService;
+import com.hermes.service.LeaseService;
 
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
@@ -67,12 +77,54 @@ public class IndexServiceImpl implements IndexService {
   @Autowired
   private ConversationRepository conversationRepository;
 
+  @Autowired
+  private FileUsageRepository fileUsageRepository;
+
   @Autowired
   private FileService fileService;
 
+  @Autowired
+  private ConversationUpdateService conversationUpdateService;
+
+  @Autowired
+  private LeaseService leaseService;
+
+  @Autowired
+  private LeaseRepository leaseRepository;
+
+  /** Set once the file usages backfill is complete, on any node: the scheduled check does nothing from then on */
+  private final AtomicBoolean fileUsagesInitialized = new AtomicBoolean(false);
+
+  private final TransactionalOperator transactionalOperator;
+
+  public IndexServiceImpl(final ReactiveFirestoreTransactionManager transactionManager) {
+    this.transactionalOperator = TransactionalOperator.create(transactionManager);
+  }
+
   @Autowired
   private FirestoreTemplate firestoreTemplate;
 
+  @Autowired
+  private PageCursorHelper pageCursorHelper;
+
+  private static final String COLLECTION_NAME = "indexes";
+
+  /** Maximum number of conversations updated at the same time when a collection is removed */
+  private static final int CONVERSATION_UPDATE_CONCURRENCY = 16;
+
+  /** File usages read and written in a transaction: fewer documents locked, and less work redone when aborted */
+  private static final int FILE_USAGE_BATCH_SIZE = 400;
+
+  /** Collections read per query by the file usages backfill */
+  private static final int BACKFILL_BATCH_SIZE = 100;
+
+  /** Retries of a transaction aborted by a concurrent write of the same usages */
+  private static final int MAX_RETRIES = 5;
+
+  private static final String FILE_USAGES_LEASE = "file-usages-backfill";
+
+  private static final long FILE_USAGES_LEASE_SECONDS = 600;
+
   private static final String CREATED_AT_FIELD = "createdAt";
 
   private static final String SHARED_FIELD = "shared";
@@ -84,7 +136,7 @@ public class IndexServiceImpl implements IndexService {
   @Override
   public Mono<PagedResult<Index>> find(final String userId, final Sort.Direction direction, final int page, final int size) {
 
-    final Sort sort = Sort.by(direction, CREATED_AT_FIELD); // Create Composite Indexes before using sorting
+    final Sort sort = Sort.by(direction, CREATED_AT_FIELD); // Composite indexes: see firestore.indexes.json
     final Pageable pageable = PageRequest.of(page, size, sort);
 
     final Flux<Index> data = indexRepository.findByCreatedBy(userId, pageable);
@@ -102,10 +154,20 @@ public class IndexServiceImpl implements IndexService {
 
   /**
    * Gets a paginated, sorted, and filtered list of indexes for a given user.
+   *
+   * <p>Pages are read after the cursor (createdAt, document ID) when one is given. Otherwise the page number is
+   * used as an offset, which Firestore scans and bills: it is kept for compatibility.
    */
   @Override
   public Mono<PagedResult<Index>> filter(final String userId, final String targetId, final String q, final boolean isPublicPath,
-  final LocalDate date, final DateComparator dateCmp, final CollectionState state, final Sort.Direction direction, final int page, final int size) {
+  final LocalDate date, final DateComparator dateCmp, final CollectionState state, final Sort.Direction direction, final int page, final int size,
+  final String cursor) {
+
+    if (size <= 0) {
+      return Mono.error(new IllegalArgumentException("Invalid page size!"));
+    }
+
+    final PageCursor pageCursor = cursor == null || cursor.isEmpty() ? null : PageCursor.decode(cursor);
 
     final List<Filter> filters = new ArrayList<>();
 
@@ -255,26 +317,35 @@ public class IndexServiceImpl implements IndexService {
       contentQueryBuilder.setWhere(finalFilter);
     }
 
-    // Apply ordering for pagination
-    contentQueryBuilder.addOrderBy(Order.newBuilder()
-      .setField(FieldReference.newBuilder().setFieldPath(CREATED_AT_FIELD))
-      .setDirection(direction == Sort.Direction.ASC ? Direction.ASCENDING : Direction.DESCENDING));
+    // Apply ordering, cursor and limit for pagination
+    pageCursorHelper.apply(contentQueryBuilder, COLLECTION_NAME, CREATED_AT_FIELD, direction, pageCursor, size);
 
-    // Apply pagination (offset and limit)
-    contentQueryBuilder.setOffset(page * size);
-    contentQueryBuilder.setLimit(Int32Value.of(size));
+    // Compatibility mode: page numbers without cursor
+    if (pageCursor == null) {
+      contentQueryBuilder.setOffset(page * size);
+    }
 
     // Get the paginated content ---
     final Flux<Index> contentFlux = firestoreTemplate.execute(contentQueryBuilder, Index.class);
 
     return Mono.zip(contentFlux.collectList(), totalCountMono)
-      .map(tuple -> new CollectionPagedResult<>(
-        tuple.getT1(),
-        tuple.getT2(),
-        size,
-        page,
-        getAllFiles(tuple.getT1())
-      ));
+      .map(tuple -> {
+
+        final List<Index> items = pageCursorHelper.page(tuple.getT1(), size);
+        final String nextCursor = pageCursorHelper.nextCursor(tuple.getT1(), size,
+          item -> new PageCursor(item.getCreatedAt(), item.getId()));
+
+        final PagedResult<Index> result = new CollectionPagedResult<>(
+          items,
+          tuple.getT2(),
+          size,
+          page,
+          getAllFiles(items)
+        );
+        result.setNextCursor(nextCursor);
+        result.setHasNext(nextCursor != null);
+        return result;
+      });
   }
 
   @Override
@@ -302,41 +373,35 @@ public class IndexServiceImpl implements IndexService {
 	public Mono<Index> createIndex(final String name, final List<String> fileIds, final String userId)
   throws InvalidOperationException {
 
-    return fileService.validateFileIds(fileIds, userId)
-      .flatMap(validFileIds -> {
+    final HashSet<String> seen = new HashSet<>();
+    for (final String key: fileIds) {
+      if (!seen.add(key)) {
+        return Mono.error(new IllegalArgumentException(String.format("Duplicate file %c %s %c", 171, key, 187)));
+      }
+    }
 
-        final HashSet<String> seen = new HashSet<>();
-        for (final String key: fileIds) {
-          if (!seen.add(key)) {
-            return Mono.error(new IllegalArgumentException(String.format("Duplicate file %c %s %c", 171, key, 187)));
-          }
+    final String lowercaseName = name.toLowerCase();
+    return indexRepository.findByLowercaseName(lowercaseName)
+      .hasElement()
+      .flatMap(exists -> {
+        if (exists) {
+          return Mono.error(new IllegalArgumentException(
+            String.format("A collection with name %c %s %c already exists", 171, lowercaseName, 187)
+          ));
         }
 
-        final String lowercaseName = name.toLowerCase();
-        return indexRepository.findByLowercaseName(lowercaseName)
-          .hasElement()
-          .flatMap(exists -> {
-            if (exists) {
-              return Mono.error(new IllegalArgumentException(
-                String.format("A collection with name %c %s %c already exists", 171, lowercaseName, 187)
-              ));
-            }
-            else {
-
-              final Map<String, String> filesWithChecksums = new HashMap<>();
-              for (final String fileId: validFileIds) {
-                String checksum = fileService.getFileChecksum(fileId, userId).block();
-                filesWithChecksums.put(fileId, checksum);
-              }
-
-              final Index index = new Index()
-                .setName(name)
-                .setLowercaseName(lowercaseName)
-                .setFiles(filesWithChecksums)
-                .setCreatedBy(userId)
-                .setCreatedAt(Utils.getTimestamp());
-              return indexRepository.save(index);
-            }
+        // Validate the files and get their checksums in batches
+        return fileService.getFileChecksums(fileIds, userId)
+          .flatMap(filesWithChecksums -> {
+
+            final Index index = new Index()
+              .setName(name)
+              .setLowercaseName(lowercaseName)
+              .setFiles(filesWithChecksums)
+              .setCreatedBy(userId)
+              .setCreatedAt(Utils.getTimestamp());
+            return indexRepository.save(index)
+              .flatMap(saved -> this.updateFileUsages(saved, saved.getFiles().keySet(), true));
           });
       });
 	}
@@ -376,7 +441,9 @@ public class IndexServiceImpl implements IndexService {
         this.removeCollectionFromConversations(indexId, index.getName(), userId, true);
 
         return indexRepository
-          .delete(index);
+          .delete(index)
+          .then(this.updateFileUsages(index, index.getFiles() == null ? List.of() : index.getFiles().keySet(), false))
+          .then();
       });
 	}
 
@@ -389,7 +456,8 @@ public class IndexServiceImpl implements IndexService {
         index.getFiles().remove(fileId);
         return indexRepository.save(
           index.setUpdatedAt(Utils.getTimestamp())
-        );
+        )
+        .flatMap(saved -> this.updateFileUsages(saved, List.of(fileId), false));
       }
     );
   }
@@ -410,25 +478,16 @@ public class IndexServiceImpl implements IndexService {
           }
         }
 
-        try {
-          return fileService.validateFileIds(fileIds, userId)
-          .flatMap(validFileIds -> {
-
-            final Map<String, String> filesWithChecksums = new HashMap<>();
-            for (final String fileId: validFileIds) {
-              final String checksum = fileService.getFileChecksum(fileId, userId).block();
-              filesWithChecksums.put(fileId, checksum);
-            }
+        // Validate the files and get their checksums in batches
+        return fileService.getFileChecksums(fileIds, userId)
+          .flatMap(filesWithChecksums -> {
 
             index.getFiles().putAll(filesWithChecksums);
             return indexRepository.save(
               index.setUpdatedAt(Utils.getTimestamp())
-            );
+            )
+            .flatMap(saved -> this.updateFileUsages(saved, filesWithChecksums.keySet(), true));
           });
-        }
-        catch (InvalidOperationException e) {
-          return Mono.error(e);
-        }
       }
     );
   }
@@ -449,38 +508,156 @@ public class IndexServiceImpl implements IndexService {
     });
   }
 
+  /**
+   * Build the file usages from the existing collections. The collections are read in the order of their IDs,
+   * BACKFILL_BATCH_SIZE at a time, the last one done is saved in the lease: a run interrupted is resumed by the next
+   * one, on any node. Once complete, the nodes stop checking.
+   */
+  @Scheduled(fixedDelayString = "${hermes.files.usages.backfill-check-interval-ms:600000}")
+  public void initFileUsages() {
+
+    if (fileUsagesInitialized.get()) return;
+
+    leaseRepository.findById(FILE_USAGES_LEASE)
+    .filter(lease -> lease.getCompletedAt() != null)
+    .doOnNext(lease -> fileUsagesInitialized.set(true))
+    .hasElement()
+    .filter(completed -> !completed)
+    .flatMap(completed -> leaseService.acquire(FILE_USAGES_LEASE, FILE_USAGES_LEASE_SECONDS))
+    .filter(lease -> lease.getCompletedAt() == null)
+    .flatMap(lease -> this.indexesAfter(lease.getCursor())
+      .expand(batch -> batch.size() < BACKFILL_BATCH_SIZE
+        ? Mono.empty()
+        : this.indexesAfter(batch.get(batch.size() - 1).getId()))
+      .flatMapIterable(batch -> batch)
+      .concatMap(index -> this.backfillFileUsages(index)
+        .then(leaseService.save(lease.setCursor(index.getId()), FILE_USAGES_LEASE_SECONDS)))
+      .count()
+      .flatMap(total -> leaseService.save(lease.setCompletedAt(Utils.getTimestamp()), FILE_USAGES_LEASE_SECONDS)
+        .thenReturn(total)))
+    .subscribe(
+      total -> {
+        fileUsagesInitialized.set(true);
+        log.info("File usages initialized: Collections: {}", total);
+      },
+      error -> log.error("Init file usages: {}", error.getMessage())
+    );
+  }
+
+  /**
+   * Next collections in the order of their IDs, after the given one (from the start when null)
+   */
+  private Mono<List<Index>> indexesAfter(final String id) {
+
+    final StructuredQuery.Builder queryBuilder = StructuredQuery.newBuilder()
+      .addOrderBy(Order.newBuilder()
+        .setField(FieldReference.newBuilder().setFieldPath(PageCursorHelper.DOCUMENT_ID_FIELD))
+        .setDirection(StructuredQuery.Direction.ASCENDING))
+      .setLimit(Int32Value.of(BACKFILL_BATCH_SIZE));
+
+    if (id != null) {
+      queryBuilder.setStartAt(pageCursorHelper.startAfter(COLLECTION_NAME, id));
+    }
+    return firestoreTemplate.execute(queryBuilder, Index.class).collectList();
+  }
+
+  /**
+   * Add a collection to the usages of its files. The collection is read again in the transaction of each batch:
+   * files removed meanwhile, or a collection deleted, don't get usages back.
+   */
+  private Mono<Void> backfillFileUsages(final Index snapshot) {
+
+    if (snapshot.getFiles() == null || snapshot.getFiles().isEmpty()) {
+      return Mono.empty();
+    }
+
+    return Flux.fromIterable(snapshot.getFiles().keySet())
+      .buffer(FILE_USAGE_BATCH_SIZE)
+      .concatMap(batch -> transactionalOperator
+        .transactional(indexRepository.findById(snapshot.getId())
+          .flatMap(index -> this.writeFileUsages(index.getId(), batch.stream()
+            .filter(fileId -> index.getFiles() != null && index.getFiles().containsKey(fileId))
+            .toList(), true)))
+        .retryWhen(Utils.retryAborted(MAX_RETRIES)))
+      .then();
+  }
+
+  /**
+   * Add or remove the collection from the usages of the files. Each batch of usages is read and written in
+   * a transaction, retried when another collection changes the same usages: no collection is lost.
+   */
+  private Mono<Index> updateFileUsages(final Index index, final Collection<String> fileIds, final boolean add) {
+
+    if (fileIds.isEmpty()) {
+      return Mono.just(index);
+    }
+
+    return Flux.fromIterable(fileIds)
+      .buffer(FILE_USAGE_BATCH_SIZE)
+      .concatMap(batch -> transactionalOperator
+        .transactional(this.writeFileUsages(index.getId(), batch, add))
+        .retryWhen(Utils.retryAborted(MAX_RETRIES)))
+      .then(Mono.just(index));
+  }
+
+  /**
+   * Read the usages of the files and add or remove the collection, in the transaction of the caller
+   */
+  private Mono<Void> writeFileUsages(final String indexId, final List<String> fileIds, final boolean add) {
+
+    if (fileIds.isEmpty()) {
+      return Mono.empty();
+    }
+
+    return fileUsageRepository.findAllById(fileIds)
+      .collectMap(FileUsage::getId)
+      .flatMapMany(existing -> {
+
+        final List<FileUsage> usages = new ArrayList<>();
+        for (final String fileId: fileIds) {
+
+          final FileUsage usage = existing.getOrDefault(fileId, new FileUsage().setId(fileId));
+          final List<String> collections = usage.getCollections();
+
+          if (add && !collections.contains(indexId)) {
+            collections.add(indexId);
+          }
+          else if (!add) {
+            collections.remove(indexId);
+          }
+          usages.add(usage.setUpdatedAt(Utils.getTimestamp()));
+        }
+
+        return fileUsageRepository.saveAll(usages);
+      })
+      .then();
+  }
+
   private void removeCollectionFromConversations(final String collectionId, final String collectionName, final String userId,
   final boolean collectionDeletion) {
 
     conversationRepository
-    .findAll()
-    .filter(item -> item.getCollections() != null && item.getCollections().contains(collectionId)
-      && (collectionDeletion || !item.getUserId().equals(userId)))
-    .collectList()
-    .flatMap(items -> {
-
-      for (final Conversation conversation: items) {
+    .findByCollectionsContaining(collectionId)
+    .filter(item -> collectionDeletion || !item.getUserId().equals(userId))
+    .flatMap(loaded -> {
 
-        final String msg = collectionDeletion
-          ? String.format("Collection %c %s %c was deleted %s removed from the discussion",
-            171, collectionName, 187, userId.equals(conversation.getUserId()) ? "and" : "by their owner and was")
-          : String.format("Collection %c %s %c was removed from public space!", 171, collectionName, 187);
+      final String msg = collectionDeletion
+        ? String.format("Collection %c %s %c was deleted %s removed from the discussion",
+          171, collectionName, 187, userId.equals(loaded.getUserId()) ? "and" : "by their owner and was")
+        : String.format("Collection %c %s %c was removed from public space!", 171, collectionName, 187);
 
-        final List<Message> history = conversation.getHistory();
-        history.add(new Message("system", msg));
+      return conversationUpdateService.update(loaded.getId(), conversation -> {
 
-        final List<String> collections = conversation.getCollections();
-        collections.remove(collectionId);
-        conversation
-          .setCollections(collections)
-          .setHistory(history)
-          .setUpdatedAt(Utils.getTimestamp());
-      }
+        // Removed meanwhile by the owner of the conversation
+        if (!conversation.getCollections().remove(collectionId)) {
+          return List.of();
+        }
 
-      return conversationRepository
-        .saveAll(items)
-        .collectList();
-    })
+        conversation.setUpdatedAt(Utils.getTimestamp());
+        return List.of(new Message("system", msg));
+      });
+    }, CONVERSATION_UPDATE_CONCURRENCY)
+    .collectList()
     .subscribe(
       resp -> log.info("Conversations updated successfully: Total: {}", resp.size()),
       error -> log.error("Remove collection from conversations: {}", error.getMessage())
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2025 Aion Sigma Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hermes.service.impl;
+
+import java.util.UUID;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+
+import com.google.cloud.spring.data.firestore.transaction.ReactiveFirestoreTransactionManager;
+import com.hermes.model.Lease;
+import com.hermes.repository.LeaseRepository;
+import com.hermes.service.LeaseService;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Leases of the tasks run by a single node at a time, stored in Firestore. A lease is taken in a transaction, so
+ * two nodes never get it at the same time, and taken over once expired when its node is gone.
+ */
+@Service
+public class LeaseServiceImpl implements LeaseService {
+
+  private final LeaseRepository leaseRepository;
+
+  private final TransactionalOperator transactionalOperator;
+
+  private static final int MAX_RETRIES = 3;
+
+  /** ID of this node, owner of its leases */
+  private final String nodeId = UUID.randomUUID().toString();
+
+  public LeaseServiceImpl(final LeaseRepository leaseRepository, final ReactiveFirestoreTransactionManager transactionManager) {
+    this.leaseRepository = leaseRepository;
+    this.transactionalOperator = TransactionalOperator.create(transactionManager);
+  }
+
+  @Override
+  public Mono<Lease> acquire(final String name, final long seconds) {
+
+    final long now = Utils.getTimestamp();
+    return transactionalOperator
+      .transactional(leaseRepository
+        .findById(name)
+        .defaultIfEmpty(new Lease().setId(name))
+        .filter(lease -> lease.getOwner() == null || nodeId.equals(lease.getOwner())
+          || lease.getExpiresAt() == null || lease.getExpiresAt() < now)
+        .flatMap(lease -> leaseRepository.save(lease.setOwner(nodeId).setExpiresAt(now + seconds))))
+      .onErrorResume(e -> Utils.isAborted(e), e -> Mono.empty()); // Taken by another node meanwhile
+  }
+
+  @Override
+  public Mono<Lease> save(final Lease lease, final long seconds) {
+
+    return transactionalOperator
+      .transactional(leaseRepository
+        .findById(lease.getId())
+        .filter(stored -> nodeId.equals(stored.getOwner()))
+        .switchIfEmpty(Mono.error(() -> new IllegalStateException("Lease [" + lease.getId() + "] taken by another node")))
+        .flatMap(stored -> leaseRepository.save(lease.setOwner(nodeId).setExpiresAt(Utils.getTimestamp() + seconds))))
+      .retryWhen(Utils.retryAborted(MAX_RETRIES));
+  }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2025 Aion Sigma Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hermes.service.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+
+import com.google.cloud.spring.data.firestore.FirestoreTemplate;
+import com.google.cloud.spring.data.firestore.transaction.ReactiveFirestoreTransactionManager;
+import com.google.firestore.v1.ArrayValue;
+import com.google.firestore.v1.StructuredQuery;
+import com.google.firestore.v1.Value;
+import com.google.firestore.v1.StructuredQuery.Direction;
+import com.google.firestore.v1.StructuredQuery.FieldFilter;
+import com.google.firestore.v1.StructuredQuery.FieldReference;
+import com.google.firestore.v1.StructuredQuery.Filter;
+import com.google.firestore.v1.StructuredQuery.Order;
+import com.google.protobuf.Int32Value;
+import com.hermes.exceptions.ConversationNotFoundException;
+import com.hermes.model.Conversation;
+import com.hermes.model.Message;
+import com.hermes.repository.ConversationRepository;
+import com.hermes.service.MessageService;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Stores the messages of a conversation in the append-only conversations/{id}/messages subcollection.
+ *
+ * <p>The conversation document only keeps a header (title, collections, message count, updatedAt), so
+ * appending a turn costs the same whatever the length of the conversation.
+ */
+@Service
+@Slf4j
+public class MessageServiceImpl implements MessageService {
+
+  @Autowired
+  private FirestoreTemplate firestoreTemplate;
+
+  @Autowired
+  private ConversationRepository conversationRepository;
+
+  private final TransactionalOperator transactionalOperator;
+
+  public MessageServiceImpl(final ReactiveFirestoreTransactionManager transactionManager) {
+    this.transactionalOperator = TransactionalOperator.create(transactionManager);
+  }
+
+  private static final int PREVIEW_LENGTH = 120;
+
+  /** Retries of a write aborted by a concurrent write of the same conversation */
+  private static final int MAX_RETRIES = 5;
+
+  private static final String ROLE_FIELD = "role";
+
+  private static final String SEQUENCE_FIELD = "sequence";
+
+  @Override
+  public Flux<Message> getMessages(final String conversationId) {
+
+    // Message IDs are zero-padded sequences, the default document order is the conversation order
+    return firestoreTemplate
+      .withParent(conversationId, Conversation.class)
+      .findAll(Message.class);
+  }
+
+  @Override
+  public Flux<Message> getLastMessages(final String conversationId, final List<String> roles, final int limit) {
+
+    final ArrayValue.Builder roleValues = ArrayValue.newBuilder();
+    roles.forEach(role -> roleValues.addValues(Value.newBuilder().setStringValue(role)));
+
+    // Composite index (role, sequence desc) on the messages collection: see firestore.indexes.json
+    final StructuredQuery.Builder queryBuilder = StructuredQuery.newBuilder()
+      .setWhere(Filter.newBuilder()
+        .setFieldFilter(FieldFilter.newBuilder()
+        .setField(FieldReference.newBuilder().setFieldPath(ROLE_FIELD))
+        .setOp(FieldFilter.Operator.IN)
+        .setValue(Value.newBuilder().setArrayValue(roleValues))))
+      .addOrderBy(Order.newBuilder()
+        .setField(FieldReference.newBuilder().setFieldPath(SEQUENCE_FIELD))
+        .setDirection(Direction.DESCENDING))
+      .setLimit(Int32Value.of(limit));
+
+    return firestoreTemplate
+      .withParent(conversationId, Conversation.class)
+      .execute(queryBuilder, Message.class)
+      .collectList()
+      .flatMapMany(messages -> {
+        Collections.reverse(messages);
+        return Flux.fromIterable(messages);
+      });
+  }
+
+  @Override
+  public Mono<Conversation> update(final String conversationId, final Function<Conversation, List<Message>> update) {
+
+    // Sequences are allocated from the stored message count, in the transaction writing the messages: a concurrent
+    // write of the same conversation aborts this transaction, which is retried on the new header
+    return transactionalOperator
+      .transactional(conversationRepository
+        .findById(conversationId)
+        .switchIfEmpty(Mono.error(new ConversationNotFoundException()))
+        .flatMap(conversation -> this.write(conversation, update)))
+      .retryWhen(Utils.retryAborted(MAX_RETRIES));
+  }
+
+  @Override
+  public Mono<Conversation> migrate(final Conversation conversation) {
+
+    if (!isLegacy(conversation)) {
+      return Mono.just(conversation);
+    }
+
+    log.info("Migrating history of conversation [{}]: {} messages", conversation.getId(), conversation.getHistory().size());
+    return this.update(conversation.getId(), stored -> List.of());
+  }
+
+  @Override
+  public Mono<Void> deleteAll(final String conversationId) {
+
+    return firestoreTemplate
+      .withParent(conversationId, Conversation.class)
+      .deleteAll(Message.class)
+      .then();
+  }
+
+  /**
+   * Apply the update to the stored header, then save the messages it returns after the existing ones.
+   * Documents written before the subcollection existed are migrated on their first write.
+   */
+  private Mono<Conversation> write(final Conversation conversation, final Function<Conversation, List<Message>> update) {
+
+    final List<Message> pending = new ArrayList<>();
+    if (isLegacy(conversation)) {
+      pending.addAll(conversation.getHistory());
+      assignSequences(pending, 0);
+      conversation.setMessageCount(pending.size());
+    }
+    conversation.setHistory(new ArrayList<>());
+
+    final List<Message> messages = update.apply(conversation);
+
+    // The update cleared the conversation: the legacy history is not kept either
+    if (conversation.getMessageCount() < pending.size()) {
+      pending.clear();
+    }
+
+    if (messages != null && !messages.isEmpty()) {
+      assignSequences(messages, conversation.getMessageCount());
+      pending.addAll(messages);
+      conversation
+        .setMessageCount(conversation.getMessageCount() + messages.size())
+        .setLastMessage(toPreview(messages.get(messages.size() - 1).getContent()));
+    }
+
+    if (pending.isEmpty()) {
+      return conversationRepository.save(conversation);
+    }
+
+    return firestoreTemplate
+      .withParent(conversation.getId(), Conversation.class)
+      .saveAll(Flux.fromIterable(pending))
+      .then(conversationRepository.save(conversation));
+  }
+
+  private void assignSequences(final List<Message> messages, final long after) {
+
+    long sequence = after;
+    for (final Message message: messages) {
+      sequence++;
+      message
+        .setId(toMessageId(sequence))
+        .setSequence(sequence);
+
+      if (message.getTokenCount() == 0) {
+        message.setTokenCount(Utils.estimateTokens(message.getContent()));
+      }
+    }
+  }
+
+  /**
+   * A conversation is legacy when its history is still embedded in the document
+   */
+  private boolean isLegacy(final Conversation conversation) {
+    return conversation.getMessageCount() == 0 && conversation.getHistory() != null && !conversation.getHistory().isEmpty();
+  }
+
+  private String toMessageId(final long sequence) {
+    return String.format("%010d", sequence);
+  }
+
+  private String toPreview(final String content) {
+
+    if (content == null || content.length() <= PREVIEW_LENGTH) {
+      return content;
+    }
+    return content.substring(0, PREVIEW_LENGTH) + "...";
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2025 Aion Sigma Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hermes.service.impl;
+
+import java.util.List;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+
+import com.google.firestore.v1.Cursor;
+import com.google.firestore.v1.StructuredQuery;
+import com.google.firestore.v1.StructuredQuery.Direction;
+import com.google.firestore.v1.StructuredQuery.FieldReference;
+import com.google.firestore.v1.StructuredQuery.Order;
+import com.google.protobuf.Int32Value;
+import com.google.protobuf.NullValue;
+import com.hermes.data.CursorPagedResult;
+import com.hermes.data.PageCursor;
+
+/**
+ * Keyset pagination on Firestore queries: order by a numeric field then by document ID, and start after
+ * the last item of the previous page. Unlike offsets, skipped documents are neither scanned nor billed.
+ */
+@Service
+public class PageCursorHelper {
+
+  public static final String DOCUMENT_ID_FIELD = "__name__";
+
+  @Value("${spring.cloud.gcp.firestore.project-id}")
+  private String projectId;
+
+  @Value("${spring.cloud.gcp.firestore.database-id:(default)}")
+  private String databaseId;
+
+  /**
+   * Apply ordering, cursor and limit to the query. One extra item is fetched to detect the next page.
+   */
+  public StructuredQuery.Builder apply(final StructuredQuery.Builder builder, final String collectionName,
+  final String sortField, final Sort.Direction direction, final PageCursor cursor, final int size) {
+
+    final Direction queryDirection = direction == Sort.Direction.ASC ? Direction.ASCENDING : Direction.DESCENDING;
+
+    builder
+      .addOrderBy(Order.newBuilder()
+        .setField(FieldReference.newBuilder().setFieldPath(sortField))
+        .setDirection(queryDirection))
+      .addOrderBy(Order.newBuilder()
+        .setField(FieldReference.newBuilder().setFieldPath(DOCUMENT_ID_FIELD))
+        .setDirection(queryDirection));
+
+    if (cursor != null) {
+      final com.google.firestore.v1.Value.Builder value = com.google.firestore.v1.Value.newBuilder();
+      if (cursor.getValue() != null) {
+        value.setIntegerValue(cursor.getValue());
+      }
+      else {
+        value.setNullValue(NullValue.NULL_VALUE);
+      }
+      builder.setStartAt(startAfter(collectionName, cursor.getId(), value.build()));
+    }
+
+    return builder.setLimit(Int32Value.of(size + 1));
+  }
+
+  /**
+   * Cursor right after a document, given the values of its order fields before the document ID
+   */
+  public Cursor startAfter(final String collectionName, final String id, final com.google.firestore.v1.Value... values) {
+
+    final Cursor.Builder cursor = Cursor.newBuilder();
+    for (final com.google.firestore.v1.Value value: values) {
+      cursor.addValues(value);
+    }
+    return cursor
+      .addValues(com.google.firestore.v1.Value.newBuilder().setReferenceValue(documentPath(collectionName, id)))
+      .setBefore(false)
+      .build();
+  }
+
+  /**
+   * Build the page from the items fetched with {@link #apply}
+   */
+  public <T, R> CursorPagedResult<R> toResult(final List<T> items, final int size, final Function<T, PageCursor> cursorOf,
+  final Function<T, R> mapper) {
+
+    return new CursorPagedResult<>(
+      page(items, size).stream().map(mapper).toList(),
+      size,
+      nextCursor(items, size, cursorOf)
+    );
+  }
+
+  /**
+   * Items of the page, without the look-ahead item
+   */
+  public <T> List<T> page(final List<T> items, final int size) {
+    return items.size() > size ? items.subList(0, size) : items;
+  }
+
+  /**
+   * Encoded cursor of the next page, null when the look-ahead item is missing
+   */
+  public <T> String nextCursor(final List<T> items, final int size, final Function<T, PageCursor> cursorOf) {
+    return items.size() > size ? cursorOf.apply(items.get(size - 1)).encode() : null;
+  }
+
+  private String documentPath(final String collectionName, final String id) {
+    return String.format("projects/%s/databases/%s/documents/%s/%s", projectId, databaseId, collectionName, id);
+  }
+}
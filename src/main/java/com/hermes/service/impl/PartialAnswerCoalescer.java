@@ -0,0 +1,148 @@
+/*
+ * Copyright 2025 Aion Sigma Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hermes.service.impl;
+
+import java.time.Duration;
+
+import org.springframework.http.codec.ServerSentEvent;
+
+import com.hermes.data.QueryEvent;
+import com.hermes.data.QueryRunEvent;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+
+/**
+ * Merge of the partial answers (or their deltas) of a stream into fewer events: the pending ones are sent every
+ * interval, once they reach maxChars, or before any other event. The merged event has the ID of the last one, so
+ * clients resume after it.
+ */
+class PartialAnswerCoalescer {
+
+  private final FluxSink<ServerSentEvent<QueryRunEvent>> sink;
+
+  private final int maxChars;
+
+  private final boolean cumulative;
+
+  private final StringBuilder pending = new StringBuilder();
+
+  private ServerSentEvent<QueryRunEvent> last;
+
+  /** Length of the last cumulative answer sent */
+  private int sentLength;
+
+  /** Offset of the pending deltas, -1 for partial answers */
+  private int deltaOffset = -1;
+
+  private PartialAnswerCoalescer(final FluxSink<ServerSentEvent<QueryRunEvent>> sink, final int maxChars,
+  final boolean cumulative) {
+    this.sink = sink;
+    this.maxChars = maxChars;
+    this.cumulative = cumulative;
+  }
+
+  /**
+   * Coalesce the partial answers of the events. Cumulative partial answers (the answer so far) replace each other,
+   * the others (the new text) are appended.
+   */
+  static Flux<ServerSentEvent<QueryRunEvent>> coalesce(final Flux<ServerSentEvent<QueryRunEvent>> events,
+  final Duration interval, final int maxChars, final boolean cumulative) {
+
+    return Flux.create(sink -> {
+
+      final PartialAnswerCoalescer coalescer = new PartialAnswerCoalescer(sink, maxChars, cumulative);
+      final Disposable timer = Flux.interval(interval).subscribe(tick -> coalescer.flush());
+      final Disposable upstream = events.subscribe(
+        coalescer::add,
+        error -> {
+          coalescer.flush();
+          sink.error(error);
+        },
+        () -> {
+          coalescer.flush();
+          sink.complete();
+        });
+
+      sink.onDispose(() -> {
+        timer.dispose();
+        upstream.dispose();
+      });
+    });
+  }
+
+  private synchronized void add(final ServerSentEvent<QueryRunEvent> event) {
+
+    final QueryEvent queryEvent = event.data().event();
+    if (queryEvent instanceof QueryEvent.AnswerDelta delta) {
+
+      // Consecutive deltas are appended
+      if (last != null && deltaOffset + pending.length() != delta.offset()) {
+        flush();
+      }
+      if (last == null) {
+        deltaOffset = delta.offset();
+      }
+      pending.append(delta.delta());
+      last = event;
+
+      if (pending.length() >= maxChars) {
+        flush();
+      }
+      return;
+    }
+
+    if (!(queryEvent instanceof QueryEvent.PartialAnswer partial)) {
+      flush();
+      sink.next(event);
+      if (queryEvent instanceof QueryEvent.AnswerReset reset && cumulative) {
+        sentLength = reset.answer().length();
+      }
+      return;
+    }
+
+    if (cumulative) {
+      pending.setLength(0);
+    }
+    if (partial.answer() != null) {
+      pending.append(partial.answer());
+    }
+    last = event;
+
+    if (pending.length() - sentLength >= maxChars) {
+      flush();
+    }
+  }
+
+  private synchronized void flush() {
+
+    if (last == null) return;
+
+    final QueryRunEvent data = last.data();
+    final QueryEvent merged = deltaOffset >= 0
+      ? new QueryEvent.AnswerDelta(pending.toString(), deltaOffset)
+      : new QueryEvent.PartialAnswer(pending.toString());
+    sink.next(ServerSentEvent.builder(new QueryRunEvent(data.id(), data.runId(), merged))
+      .id(last.id())
+      .build());
+
+    sentLength = cumulative && deltaOffset < 0 ? pending.length() : 0;
+    pending.setLength(0);
+    deltaOffset = -1;
+    last = null;
+  }
+}
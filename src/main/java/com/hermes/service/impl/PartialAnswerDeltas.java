@@ -0,0 +1,86 @@
+/*
+ * Copyright 2025 Aion Sigma Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hermes.service.impl;
+
+import org.springframework.http.codec.ServerSentEvent;
+
+import com.hermes.data.QueryEvent;
+import com.hermes.data.QueryRunEvent;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * Conversion of the partial answers of a stream into deltas: the text appended to the answer and its offset.
+ * A cumulative answer that doesn't extend the previous one, and a reset of the answer, are sent whole, at offset 0.
+ */
+final class PartialAnswerDeltas {
+
+  private PartialAnswerDeltas() {}
+
+  static Flux<ServerSentEvent<QueryRunEvent>> toDeltas(final Flux<ServerSentEvent<QueryRunEvent>> events,
+  final boolean cumulative) {
+
+    return Flux.defer(() -> {
+
+      // Length of the answer so far, and its text for the cumulative answers
+      final int[] length = { 0 };
+      final String[] previous = { "" };
+
+      return events.map(event -> {
+
+        if (event.data().event() instanceof QueryEvent.AnswerReset reset) {
+          previous[0] = reset.answer();
+          length[0] = reset.answer().length();
+          return toDelta(event, reset.answer(), 0);
+        }
+
+        if (!(event.data().event() instanceof QueryEvent.PartialAnswer partial) || partial.answer() == null) {
+          return event;
+        }
+
+        final String text = partial.answer();
+        final String delta;
+        final int offset;
+        if (!cumulative) {
+          offset = length[0];
+          delta = text;
+        }
+        else if (text.startsWith(previous[0])) {
+          offset = previous[0].length();
+          delta = text.substring(offset);
+          previous[0] = text;
+        }
+        else {
+          offset = 0;
+          delta = text;
+          previous[0] = text;
+        }
+        length[0] = offset + delta.length();
+
+        return toDelta(event, delta, offset);
+      });
+    });
+  }
+
+  private static ServerSentEvent<QueryRunEvent> toDelta(final ServerSentEvent<QueryRunEvent> event, final String delta,
+  final int offset) {
+
+    final QueryRunEvent data = event.data();
+    return ServerSentEvent.builder(new QueryRunEvent(data.id(), data.runId(), new QueryEvent.AnswerDelta(delta, offset)))
+      .id(event.id())
+      .build();
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2025 Aion Sigma Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hermes.service.impl;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+/**
+ * At most a number of tasks running at the same time for each key, the others wait in turn without holding a thread.
+ * Keys without running or waiting tasks are forgotten.
+ */
+class PermitQueue {
+
+  private static class Permits {
+
+    private final Deque<Sinks.One<Boolean>> waiting = new ArrayDeque<>();
+
+    private int used;
+  }
+
+  private final int maxPermits;
+
+  private final Map<String, Permits> permits = new HashMap<>();
+
+  PermitQueue(final int maxPermits) {
+    this.maxPermits = maxPermits;
+  }
+
+  /**
+   * Run the task once a permit of the key is available, the permit is released when it ends or is cancelled
+   */
+  <T> Mono<T> withPermit(final String key, final Mono<T> task) {
+
+    return Mono.usingWhen(
+      this.acquire(key),
+      acquired -> task,
+      acquired -> this.release(key),
+      (acquired, error) -> this.release(key),
+      acquired -> this.release(key)
+    );
+  }
+
+  /**
+   * Run the task once a permit of the key is available, the permit is released when it ends or is cancelled
+   */
+  <T> Flux<T> withPermit(final String key, final Flux<T> task) {
+
+    return Flux.usingWhen(
+      this.acquire(key),
+      acquired -> task,
+      acquired -> this.release(key),
+      (acquired, error) -> this.release(key),
+      acquired -> this.release(key)
+    );
+  }
+
+  private Mono<Boolean> acquire(final String key) {
+
+    return Mono.defer(() -> {
+
+      final Sinks.One<Boolean> ticket = Sinks.one();
+      synchronized (permits) {
+
+        final Permits keyPermits = permits.computeIfAbsent(key, k -> new Permits());
+        if (keyPermits.used < maxPermits) {
+          keyPermits.used++;
+          return Mono.just(true);
+        }
+        keyPermits.waiting.addLast(ticket);
+      }
+
+      return ticket.asMono().doOnCancel(() -> this.cancel(key, ticket));
+    });
+  }
+
+  private Mono<Void> release(final String key) {
+
+    return Mono.fromRunnable(() -> {
+
+      final Sinks.One<Boolean> next;
+      synchronized (permits) {
+
+        final Permits keyPermits = permits.get(key);
+        next = keyPermits.waiting.pollFirst();
+        if (next == null && --keyPermits.used == 0) {
+          permits.remove(key);
+        }
+      }
+
+      // The permit goes to the next task waiting
+      if (next != null) {
+        next.tryEmitValue(true);
+      }
+    });
+  }
+
+  /**
+   * A task cancelled while waiting leaves the queue, or gives back the permit it was just handed
+   */
+  private void cancel(final String key, final Sinks.One<Boolean> ticket) {
+
+    final boolean waiting;
+    synchronized (permits) {
+      final Permits keyPermits = permits.get(key);
+      waiting = keyPermits != null && keyPermits.waiting.remove(ticket);
+    }
+
+    if (!waiting) {
+      this.release(key).subscribe();
+    }
+  }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2025 Aion Sigma Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hermes.service.impl;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import com.hermes.service.ProcessorPoolService;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * Pool of processor instances, from the comma-separated hermes.processor.url.
+ *
+ * <p>Each query goes to the better of two random instances (power of two choices), the one with the fewest
+ * streams in flight. An instance is ejected after unhealthy-threshold consecutive failures, from queries or from
+ * the health checks, and comes back after healthy-threshold successful health checks. When every instance is
+ * ejected, queries are still sent to all of them.
+ */
+@Service
+@Slf4j
+public class ProcessorPoolServiceImpl implements ProcessorPoolService {
+
+  @Value("${hermes.processor.health.path:/health}")
+  private String healthPath;
+
+  @Value("${hermes.processor.health.timeout-ms:2000}")
+  private long healthTimeoutMs;
+
+  @Value("${hermes.processor.health.unhealthy-threshold:3}")
+  private int unhealthyThreshold;
+
+  @Value("${hermes.processor.health.healthy-threshold:2}")
+  private int healthyThreshold;
+
+  private final MeterRegistry meterRegistry;
+
+  private final List<Instance> instances;
+
+  private class Instance {
+
+    private final String url;
+
+    private final WebClient client;
+
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    private volatile boolean healthy = true;
+
+    private int failures;
+
+    private int successes;
+
+    private Instance(final String url, final WebClient client) {
+      this.url = url;
+      this.client = client;
+    }
+
+    private synchronized void success(final boolean healthCheck) {
+
+      failures = 0;
+      if (!healthy && healthCheck && ++successes >= healthyThreshold) {
+        healthy = true;
+        log.info("Processor instance {} is back", url);
+      }
+    }
+
+    private synchronized void failure(final Throwable error) {
+
+      successes = 0;
+      if (healthy && ++failures >= unhealthyThreshold) {
+        healthy = false;
+        log.warn("Processor instance {} ejected: {}", url, error.getMessage());
+      }
+    }
+  }
+
+  public ProcessorPoolServiceImpl(final WebClient.Builder webClientBuilder, final MeterRegistry meterRegistry,
+  @Value("${hermes.processor.url}") final List<String> urls,
+  @Value("${hermes.processor.max-connections:100}") final int maxConnections) {
+
+    this.meterRegistry = meterRegistry;
+    this.instances = urls.stream()
+      .map(String::trim)
+      .filter(url -> !url.isEmpty())
+      .map(url -> url.replaceAll("/+$", ""))
+      .distinct()
+      .map(url -> {
+
+        // Connection pool of the instance, with its metrics (reactor.netty.connection.provider.*)
+        final ConnectionProvider provider = ConnectionProvider.builder("processor-" + url)
+          .maxConnections(maxConnections)
+          .metrics(true)
+          .build();
+
+        final WebClient client = webClientBuilder.clone()
+          .baseUrl(url)
+          .clientConnector(new ReactorClientHttpConnector(HttpClient.create(provider)))
+          .build();
+
+        final Instance instance = new Instance(url, client);
+        Gauge.builder("hermes.processor.outstanding", instance.outstanding, AtomicInteger::get)
+          .description("Streams in flight on the processor instance")
+          .tag("instance", url)
+          .register(meterRegistry);
+        Gauge.builder("hermes.processor.healthy", instance, it -> it.healthy ? 1 : 0)
+          .tag("instance", url)
+          .register(meterRegistry);
+        return instance;
+      })
+      .toList();
+
+    if (instances.isEmpty()) {
+      throw new IllegalStateException("No processor URL configured (hermes.processor.url)");
+    }
+    log.info("Processor instances: {}", instances.stream().map(instance -> instance.url).toList());
+  }
+
+  @Override
+  public <T> Flux<T> route(final Function<WebClient, Flux<T>> call) {
+
+    return Flux.defer(() -> {
+
+      final Instance instance = choose();
+      final long start = System.nanoTime();
+      instance.outstanding.incrementAndGet();
+
+      return call.apply(instance.client)
+        .doOnComplete(() -> instance.success(false))
+        .doOnError(error -> {
+          if (isInstanceFailure(error)) instance.failure(error);
+        })
+        .doFinally(signal -> {
+          instance.outstanding.decrementAndGet();
+          Timer.builder("hermes.processor.stream")
+            .description("Duration of the streams of the processor instance")
+            .tag("instance", instance.url)
+            .tag("outcome", signal == SignalType.ON_COMPLETE ? "success" : signal == SignalType.ON_ERROR ? "error" : "cancelled")
+            .publishPercentiles(0.5, 0.95, 0.99)
+            .register(meterRegistry)
+            .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        });
+    });
+  }
+
+  @Override
+  public <T> Flux<T> broadcast(final Function<WebClient, Mono<T>> call) {
+
+    return Flux.fromIterable(instances)
+      .filter(instance -> instance.healthy)
+      .flatMap(instance -> call.apply(instance.client));
+  }
+
+  /**
+   * Check the health of every instance
+   */
+  @Scheduled(fixedDelayString = "${hermes.processor.health.interval-ms:10000}")
+  public void checkHealth() {
+
+    instances.forEach(instance -> instance.client
+      .get()
+      .uri(healthPath)
+      .retrieve()
+      .toBodilessEntity()
+      .timeout(Duration.ofMillis(healthTimeoutMs))
+      .subscribe(response -> instance.success(true), instance::failure));
+  }
+
+  /**
+   * Power of two choices between the healthy instances, or between all of them when none is healthy
+   */
+  private Instance choose() {
+
+    List<Instance> candidates = instances.stream().filter(instance -> instance.healthy).toList();
+    if (candidates.isEmpty()) {
+      candidates = instances;
+    }
+    if (candidates.size() == 1) {
+      return candidates.get(0);
+    }
+
+    final ThreadLocalRandom random = ThreadLocalRandom.current();
+    final int first = random.nextInt(candidates.size());
+    final int second = (first + 1 + random.nextInt(candidates.size() - 1)) % candidates.size();
+
+    final Instance a = candidates.get(first), b = candidates.get(second);
+    return a.outstanding.get() <= b.outstanding.get() ? a : b;
+  }
+
+  /**
+   * Connection errors and server errors count against the instance, not the errors of the request itself
+   */
+  private boolean isInstanceFailure(final Throwable error) {
+    return error instanceof WebClientRequestException
+      || (error instanceof WebClientResponseException response && response.getStatusCode().is5xxServerError());
+  }
+}
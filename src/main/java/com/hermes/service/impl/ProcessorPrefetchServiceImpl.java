@@ -0,0 +1,108 @@
+/*
+ * Copyright 2025 Aion Sigma Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hermes.service.impl;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.hermes.model.Index;
+import com.hermes.service.ProcessorPoolService;
+import com.hermes.service.ProcessorPrefetchService;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+/**
+ * Prefetch hints to the processor, so the index of a collection is loaded before its first question.
+ *
+ * <p>A collection is sent at most once every min-interval-seconds for the same version of its files: adding it
+ * to many conversations doesn't load it again, changing its files does.
+ */
+@Service
+@Slf4j
+public class ProcessorPrefetchServiceImpl implements ProcessorPrefetchService {
+
+  @Autowired
+  private ProcessorPoolService processorPoolService;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Value("${hermes.processor.prefetch.enabled:true}")
+  private boolean enabled;
+
+  @Value("${hermes.processor.prefetch.path:/processor/prefetch}")
+  private String prefetchPath;
+
+  @Value("${hermes.processor.prefetch.min-interval-seconds:600}")
+  private long minIntervalSeconds;
+
+  private static final int MAX_TRACKED_VERSIONS = 10000;
+
+  /** Last hint sent, by collection version */
+  private final Map<String, Long> lastSent = new ConcurrentHashMap<>();
+
+  @Override
+  public void prefetch(final List<Index> collections) {
+
+    if (!enabled || collections == null || collections.isEmpty()) return;
+
+    final long now = System.currentTimeMillis(), minInterval = minIntervalSeconds * 1000;
+    if (lastSent.size() > MAX_TRACKED_VERSIONS) {
+      lastSent.values().removeIf(sentAt -> sentAt + minInterval < now);
+    }
+
+    final List<String> collectionIds = collections.stream()
+      .filter(collection -> {
+
+        final String version = collection.getId() + ":" + Objects.hashCode(collection.getFiles());
+        final boolean[] due = { false };
+        lastSent.compute(version, (key, sentAt) -> {
+          due[0] = sentAt == null || sentAt + minInterval < now;
+          return due[0] ? now : sentAt;
+        });
+        return due[0];
+      })
+      .map(Index::getId)
+      .distinct()
+      .toList();
+
+    if (collectionIds.isEmpty()) return;
+
+    log.info("Prefetching collections {}", collectionIds);
+    meterRegistry.counter("hermes.processor.prefetch").increment(collectionIds.size());
+
+    processorPoolService
+      .broadcast(client -> client
+        .post()
+        .uri(prefetchPath)
+        .bodyValue(Map.of("indexes", collectionIds))
+        .retrieve()
+        .toBodilessEntity()
+        .onErrorResume(e -> {
+          log.warn("Prefetch of collections {} failed: {}", collectionIds, e.getMessage());
+          return Mono.empty();
+        }))
+      .subscribe();
+  }
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2025 Aion Sigma Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hermes.service.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.hermes.data.QueryEvent;
+import com.hermes.exceptions.TooManyRequestsException;
+import com.hermes.service.QueryAdmissionService;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+/**
+ * Admission of the queries to the processor: at most max-concurrent queries run at the same time, the others wait
+ * in a queue per user. Users are served in turn (round-robin), so a user sending many queries only delays their own.
+ *
+ * <p>Queries take their place when the request is received, so a full queue is rejected (429) before the query is
+ * prepared and its response started.
+ */
+@Service
+@Slf4j
+public class QueryAdmissionServiceImpl implements QueryAdmissionService {
+
+  @Value("${hermes.query.admission.max-concurrent:16}")
+  private int maxConcurrent;
+
+  @Value("${hermes.query.admission.max-queued:200}")
+  private int maxQueued;
+
+  @Value("${hermes.query.admission.max-queued-per-user:5}")
+  private int maxQueuedPerUser;
+
+  private enum State { ADMITTED, WAITING, RUNNING, DONE }
+
+  private class Ticket implements Admission {
+
+    private final String userId;
+
+    private final long enqueuedAt = System.nanoTime();
+
+    private final Sinks.Many<Integer> positions = Sinks.many().replay().latest();
+
+    private final Sinks.One<Boolean> start = Sinks.one();
+
+    private State state = State.ADMITTED;
+
+    private int position;
+
+    private boolean used;
+
+    private Ticket(final String userId) {
+      this.userId = userId;
+    }
+
+    @Override
+    public Flux<QueryEvent> run(final Supplier<Flux<QueryEvent>> query) {
+      return QueryAdmissionServiceImpl.this.run(this, query);
+    }
+
+    @Override
+    public void release() {
+
+      synchronized (QueryAdmissionServiceImpl.this) {
+        if (used || state != State.ADMITTED) return;
+
+        state = State.DONE;
+        queued--;
+        leave(userId);
+      }
+    }
+  }
+
+  /** Waiting tickets by user */
+  private final Map<String, Deque<Ticket>> queues = new HashMap<>();
+
+  /** Users with waiting tickets, in the order they are served */
+  private final Deque<String> turns = new ArrayDeque<>();
+
+  /** Tickets admitted or waiting, by user */
+  private final Map<String, Integer> pending = new HashMap<>();
+
+  private int queued;
+
+  private int running;
+
+  private final Timer waitTimer;
+
+  private final MeterRegistry meterRegistry;
+
+  public QueryAdmissionServiceImpl(final MeterRegistry meterRegistry) {
+    this.meterRegistry = meterRegistry;
+    this.waitTimer = Timer.builder("hermes.query.queue.wait")
+      .description("Time spent by the queries waiting for the processor")
+      .publishPercentiles(0.5, 0.95, 0.99)
+      .register(meterRegistry);
+    meterRegistry.gauge("hermes.query.queue.depth", this, service -> service.queued);
+    meterRegistry.gauge("hermes.query.running", this, service -> service.running);
+  }
+
+  @Override
+  public synchronized Admission admit(final String userId) throws TooManyRequestsException {
+
+    if (queued >= maxQueued || pending.getOrDefault(userId, 0) >= maxQueuedPerUser) {
+      meterRegistry.counter("hermes.query.rejected").increment();
+      log.warn("Query of user {} rejected: {} queries waiting", userId, queued);
+      throw new TooManyRequestsException("Too many queries waiting, please try again later.");
+    }
+
+    // Counted as waiting from now on, so admitted queries can't overflow the queue
+    pending.merge(userId, 1, Integer::sum);
+    queued++;
+    return new Ticket(userId);
+  }
+
+  private Flux<QueryEvent> run(final Ticket ticket, final Supplier<Flux<QueryEvent>> query) {
+
+    return Flux.defer(() -> {
+
+      synchronized (this) {
+
+        if (ticket.used) {
+          return Flux.error(new IllegalStateException("Query already run"));
+        }
+        ticket.used = true;
+
+        // Released before running (the request was cancelled meanwhile): counted again, past the bounds
+        if (ticket.state == State.DONE) {
+          pending.merge(ticket.userId, 1, Integer::sum);
+          queued++;
+        }
+
+        final Deque<Ticket> queue = queues.get(ticket.userId);
+        if (queue == null) {
+          queues.put(ticket.userId, new ArrayDeque<>(List.of(ticket)));
+          turns.addLast(ticket.userId);
+        }
+        else {
+          queue.addLast(ticket);
+        }
+        ticket.state = State.WAITING;
+      }
+
+      dispatch();
+
+      final Flux<QueryEvent> queuedEvents = ticket.positions.asFlux().map(QueryEvent.Queued::new);
+
+      return Flux.merge(queuedEvents, ticket.start.asMono().thenMany(Flux.defer(query)))
+        .doFinally(signal -> release(ticket));
+    });
+  }
+
+  /**
+   * Start the next queries while there are free slots, taking one from each user in turn, and update the positions
+   * of the others
+   */
+  private void dispatch() {
+
+    final List<Ticket> started = new ArrayList<>();
+    synchronized (this) {
+
+      while (running < maxConcurrent && !turns.isEmpty()) {
+
+        final String userId = turns.pollFirst();
+        final Deque<Ticket> queue = queues.get(userId);
+        final Ticket ticket = queue.pollFirst();
+        if (queue.isEmpty()) {
+          queues.remove(userId);
+        }
+        else {
+          turns.addLast(userId);
+        }
+
+        ticket.state = State.RUNNING;
+        ticket.positions.tryEmitComplete();
+        queued--;
+        leave(ticket.userId);
+        running++;
+        started.add(ticket);
+      }
+
+      updatePositions();
+    }
+
+    started.forEach(ticket -> {
+      waitTimer.record(System.nanoTime() - ticket.enqueuedAt, TimeUnit.NANOSECONDS);
+      ticket.start.tryEmitValue(true);
+    });
+  }
+
+  /**
+   * Free the slot of a finished query, or remove a cancelled one from the queue
+   */
+  private void release(final Ticket ticket) {
+
+    synchronized (this) {
+
+      if (ticket.state == State.WAITING) {
+
+        final Deque<Ticket> queue = queues.get(ticket.userId);
+        queue.remove(ticket);
+        if (queue.isEmpty()) {
+          queues.remove(ticket.userId);
+          turns.remove(ticket.userId);
+        }
+        queued--;
+        leave(ticket.userId);
+      }
+      else if (ticket.state == State.RUNNING) {
+        running--;
+      }
+      ticket.state = State.DONE;
+    }
+
+    dispatch();
+  }
+
+  private void leave(final String userId) {
+    pending.computeIfPresent(userId, (user, count) -> count > 1 ? count - 1 : null);
+  }
+
+  /**
+   * Send their position to the waiting tickets when it changes, in the order they will be served
+   */
+  private void updatePositions() {
+
+    final List<Iterator<Ticket>> iterators = turns.stream().map(userId -> queues.get(userId).iterator()).toList();
+
+    int position = 0;
+    boolean remaining = true;
+    while (remaining) {
+
+      remaining = false;
+      for (final Iterator<Ticket> iterator : iterators) {
+
+        if (!iterator.hasNext()) continue;
+
+        final Ticket ticket = iterator.next();
+        if (ticket.position != ++position) {
+          ticket.position = position;
+          ticket.positions.tryEmitNext(position);
+        }
+        remaining = true;
+      }
+    }
+  }
+}
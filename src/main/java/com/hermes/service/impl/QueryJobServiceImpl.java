@@ -0,0 +1,216 @@
+/*
+ * Copyright 2025 Aion Sigma Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hermes.service.impl;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hermes.data.QueryEvent;
+import com.hermes.data.QueryJobStatus;
+import com.hermes.exceptions.NotFoundException;
+import com.hermes.exceptions.TooManyRequestsException;
+import com.hermes.model.QueryJob;
+import com.hermes.model.QueryNode;
+import com.hermes.repository.QueryJobRepository;
+import com.hermes.repository.QueryNodeRepository;
+import com.hermes.service.QueryJobService;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Queries answered in the background. At most max-running jobs run at the same time on this node, and at most
+ * max-queued wait for a worker. Their state is saved in Firestore, so they can be polled from any node.
+ *
+ * <p>Jobs are not resumed after a restart. Each node saves a heartbeat: the unfinished jobs of a node without
+ * heartbeat for stale-after-seconds are marked as failed.
+ */
+@Service
+@Slf4j
+public class QueryJobServiceImpl implements QueryJobService {
+
+  @Autowired
+  private QueryJobRepository queryJobRepository;
+
+  @Autowired
+  private QueryNodeRepository queryNodeRepository;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Value("${hermes.query.jobs.max-running:8}")
+  private int maxRunning;
+
+  @Value("${hermes.query.jobs.max-queued:100}")
+  private int maxQueued;
+
+  @Value("${hermes.query.jobs.stale-after-seconds:60}")
+  private long staleAfterSeconds;
+
+  /** Jobs running on this node, waiting jobs don't hold a thread */
+  private PermitQueue workers;
+
+  private final AtomicInteger waiting = new AtomicInteger();
+
+  private final String nodeId = UUID.randomUUID().toString();
+
+  /** Key of the worker permits */
+  private static final String WORKERS = "workers";
+
+  /** Heartbeats of the nodes gone for this long are deleted */
+  private static final long NODE_RETENTION_SECONDS = 86400;
+
+  @PostConstruct
+  private void initWorkers() {
+    workers = new PermitQueue(maxRunning);
+  }
+
+  @Override
+  public Mono<QueryJob> create(final String userId, final String conversationId, final String question) {
+
+    if (waiting.incrementAndGet() > maxQueued) {
+      waiting.decrementAndGet();
+      return Mono.error(new TooManyRequestsException("Too many jobs waiting, please try again later."));
+    }
+
+    final QueryJob job = new QueryJob()
+      .setId(UUID.randomUUID().toString())
+      .setUserId(userId)
+      .setConversationId(conversationId)
+      .setQuestion(question)
+      .setStatus(QueryJobStatus.QUEUED)
+      .setNodeId(nodeId)
+      .setCreatedAt(Utils.getTimestamp());
+
+    return save(job).doOnError(e -> waiting.decrementAndGet());
+  }
+
+  @Override
+  public Flux<QueryEvent> run(final QueryJob job, final Flux<QueryEvent> events) {
+
+    // The job leaves the waiting ones when it starts, or when it is cancelled before
+    final AtomicBoolean dequeued = new AtomicBoolean();
+    final Runnable dequeue = () -> {
+      if (dequeued.compareAndSet(false, true)) {
+        waiting.decrementAndGet();
+      }
+    };
+
+    return workers
+      .withPermit(WORKERS, Flux.defer(() -> {
+        dequeue.run();
+        return save(job.setStatus(QueryJobStatus.RUNNING)).thenMany(events);
+      }))
+      .doFinally(signal -> dequeue.run())
+      .concatMap(event -> event.status().isFinal() ? save(finish(job, event)).thenReturn(event) : Mono.just(event))
+    .onErrorResume(e -> save(job.setStatus(QueryJobStatus.ERROR).setError(e.getMessage())).then(Mono.error(e)))
+    .doOnCancel(() -> save(job.setStatus(QueryJobStatus.ERROR).setError("The query was cancelled.")).subscribe());
+  }
+
+  @Override
+  public Mono<QueryJob> getJob(final String jobId, final String userId) {
+
+    return queryJobRepository
+      .findById(jobId)
+      .filter(job -> job.getUserId().equals(userId))
+      .switchIfEmpty(Mono.error(new NotFoundException("Query job not found")));
+  }
+
+  @Override
+  public QueryEvent toEvent(final QueryJob job) {
+
+    if (job.getStatus() != QueryJobStatus.COMPLETED) {
+      return new QueryEvent.Failed(job.getError());
+    }
+
+    try {
+      return new QueryEvent.Completed(job.getAnswer(), job.getRephrasedQuestion(),
+        job.getReferences() != null ? objectMapper.readTree(job.getReferences()) : null);
+    }
+    catch (JsonProcessingException e) {
+      log.error("Invalid references of job [{}]: {}", job.getId(), e.getMessage());
+      return new QueryEvent.Completed(job.getAnswer(), job.getRephrasedQuestion(), null);
+    }
+  }
+
+  /**
+   * Tell the other nodes that the jobs of this node are alive
+   */
+  @Scheduled(fixedDelayString = "${hermes.query.jobs.heartbeat-interval-ms:15000}")
+  public void heartbeat() {
+
+    queryNodeRepository
+      .save(new QueryNode().setId(nodeId).setHeartbeatAt(Utils.getTimestamp()))
+      .subscribe(node -> {}, e -> log.error("Error saving the heartbeat of node [{}]: {}", nodeId, e.getMessage()));
+  }
+
+  /**
+   * Fail the jobs left unfinished by a node without heartbeat, after a restart or a crash
+   */
+  @Scheduled(fixedDelayString = "${hermes.query.jobs.stale-check-interval-ms:30000}")
+  public void failStaleJobs() {
+
+    final long now = Utils.getTimestamp(), staleBefore = now - staleAfterSeconds;
+    queryNodeRepository
+      .findAll()
+      .collectMap(QueryNode::getId, QueryNode::getHeartbeatAt)
+      .flatMapMany(heartbeats -> queryNodeRepository
+        .deleteAll(Flux.fromIterable(heartbeats.entrySet())
+          .filter(entry -> entry.getValue() < now - NODE_RETENTION_SECONDS)
+          .map(entry -> new QueryNode().setId(entry.getKey())))
+        .thenMany(queryJobRepository.findByStatusIn(List.of(QueryJobStatus.QUEUED.name(), QueryJobStatus.RUNNING.name())))
+        .filter(job -> {
+          // Jobs saved before the heartbeats existed only have their update time
+          final Long heartbeat = job.getNodeId() != null ? heartbeats.get(job.getNodeId()) : job.getUpdatedAt();
+          return !nodeId.equals(job.getNodeId()) && (heartbeat == null || heartbeat < staleBefore);
+        }))
+      .flatMap(job -> {
+        log.warn("Query job [{}] interrupted", job.getId());
+        return save(job.setStatus(QueryJobStatus.ERROR).setError("The query was interrupted, please try again."));
+      })
+      .subscribe(job -> {}, e -> log.error("Error failing stale jobs: {}", e.getMessage()));
+  }
+
+  private QueryJob finish(final QueryJob job, final QueryEvent event) {
+
+    if (event instanceof QueryEvent.Completed completed) {
+      return job
+        .setStatus(QueryJobStatus.COMPLETED)
+        .setAnswer(completed.answer())
+        .setRephrasedQuestion(completed.rephrasedQuestion())
+        .setReferences(completed.references() != null ? completed.references().toString() : null);
+    }
+
+    return job
+      .setStatus(QueryJobStatus.ERROR)
+      .setError(event instanceof QueryEvent.Failed failed ? failed.message() : null);
+  }
+
+  private Mono<QueryJob> save(final QueryJob job) {
+    return queryJobRepository.save(job.setUpdatedAt(Utils.getTimestamp()));
+  }
+}
@@ -0,0 +1,344 @@
+/*
+ * Copyright 2025 Aion Sigma Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hermes.service.impl;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Service;
+
+import com.hermes.data.QueryEvent;
+import com.hermes.data.QueryRunEvent;
+import com.hermes.data.StreamOptions;
+import com.hermes.exceptions.NotFoundException;
+import com.hermes.service.QueryRunService;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+/**
+ * Runs of the queries, kept in memory on the node that started them.
+ *
+ * <p>A run subscribes to the events of its query itself, so the answer is saved even when the client disconnects.
+ * The last buffer-size events are kept for the clients reconnecting with the Last-Event-ID header, until
+ * retention-seconds after the end of the run. The partial answers evicted from the buffer are compacted into the
+ * answer so far, sent as a reset of the answer to the clients that missed some of them.
+ *
+ * <p>Live viewers of a conversation get the events of its runs, from the start, whichever client posted them.
+ *
+ * <p>A run without clients for abandon-after-seconds is stopped (not the background ones), and so is its processor
+ * stream. Clients can also cancel their runs.
+ */
+@Service
+@Slf4j
+public class QueryRunServiceImpl implements QueryRunService {
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Value("${hermes.query.runs.buffer-size:1000}")
+  private int bufferSize;
+
+  @Value("${hermes.query.runs.retention-seconds:300}")
+  private long retentionSeconds;
+
+  @Value("${hermes.query.runs.abandon-after-seconds:30}")
+  private long abandonAfterSeconds;
+
+  @Value("${hermes.query.stream.coalesce-ms:50}")
+  private long coalesceMs;
+
+  @Value("${hermes.query.stream.coalesce-chars:512}")
+  private int coalesceChars;
+
+  @Value("${hermes.processor.partial-answers:incremental}")
+  private String partialAnswers;
+
+  private record RunEvent(long sequence, QueryRunEvent event) {}
+
+  private class QueryRun {
+
+    private final String id;
+
+    private final String userId;
+
+    private final String conversationId;
+
+    private final boolean background;
+
+    /** Last buffer-size events */
+    private final Deque<RunEvent> buffer = new ArrayDeque<>();
+
+    /** Answer so far at the first buffered event, once partial answers are evicted from the buffer */
+    private RunEvent snapshot;
+
+    /** Events of the attached clients */
+    private final List<Sinks.Many<RunEvent>> listeners = new ArrayList<>();
+
+    private Throwable error;
+
+    /** Message of the stop, the events end with it as an error event */
+    private final Sinks.One<String> stop = Sinks.one();
+
+    private long sequence;
+
+    private int clients;
+
+    private boolean finished;
+
+    private boolean stopped;
+
+    private QueryRun(final String id, final String userId, final String conversationId, final boolean background) {
+      this.id = id;
+      this.userId = userId;
+      this.conversationId = conversationId;
+      this.background = background;
+    }
+
+    private synchronized void emit(final QueryEvent event) {
+
+      if (finished) return;
+
+      final RunEvent runEvent = new RunEvent(sequence++, new QueryRunEvent(conversationId, id, event));
+      buffer.addLast(runEvent);
+      if (buffer.size() > bufferSize) {
+        compact(buffer.removeFirst());
+      }
+      listeners.forEach(listener -> listener.tryEmitNext(runEvent));
+    }
+
+    /**
+     * Fold the evicted event into the snapshot, which takes its sequence: clients resuming before it get the snapshot
+     * instead of the events they missed
+     */
+    private void compact(final RunEvent evicted) {
+
+      final boolean partial = evicted.event().event() instanceof QueryEvent.PartialAnswer;
+      if (snapshot == null && !partial) return;
+
+      String answer = snapshot != null ? ((QueryEvent.AnswerReset) snapshot.event().event()).answer() : "";
+      if (evicted.event().event() instanceof QueryEvent.PartialAnswer evictedAnswer && evictedAnswer.answer() != null) {
+        answer = isCumulative() ? evictedAnswer.answer() : answer + evictedAnswer.answer();
+      }
+      snapshot = new RunEvent(evicted.sequence(), new QueryRunEvent(conversationId, id, new QueryEvent.AnswerReset(answer)));
+    }
+
+    private synchronized void finish(final Throwable error) {
+
+      if (finished) return;
+
+      finished = true;
+      this.error = error;
+      listeners.forEach(this::close);
+      listeners.clear();
+    }
+
+    /**
+     * Events of the run for a client: the snapshot and the buffered events, then the new ones
+     */
+    private synchronized Flux<RunEvent> events() {
+
+      final Sinks.Many<RunEvent> listener = Sinks.many().unicast().onBackpressureBuffer();
+      if (snapshot != null) {
+        listener.tryEmitNext(snapshot);
+      }
+      buffer.forEach(listener::tryEmitNext);
+
+      if (finished) {
+        close(listener);
+      }
+      else {
+        listeners.add(listener);
+      }
+      return listener.asFlux().doFinally(signal -> removeListener(listener));
+    }
+
+    private synchronized void removeListener(final Sinks.Many<RunEvent> listener) {
+      listeners.remove(listener);
+    }
+
+    private void close(final Sinks.Many<RunEvent> listener) {
+      if (error != null) {
+        listener.tryEmitError(error);
+      }
+      else {
+        listener.tryEmitComplete();
+      }
+    }
+  }
+
+  private final Map<String, QueryRun> runs = new ConcurrentHashMap<>();
+
+  /** Run in flight, by conversation */
+  private final Map<String, QueryRun> liveRuns = new ConcurrentHashMap<>();
+
+  /** Runs started, for the live viewers of their conversation */
+  private final Sinks.Many<QueryRun> startedRuns = Sinks.many().multicast().directBestEffort();
+
+  @Override
+  public String start(final String userId, final String conversationId,
+  final Function<Mono<String>, Flux<QueryEvent>> events) {
+
+    final QueryRun run = new QueryRun(UUID.randomUUID().toString(), userId, conversationId, false);
+    start(run, events);
+    return run.id;
+  }
+
+  @Override
+  public void startInBackground(final String runId, final String userId, final String conversationId,
+  final Function<Mono<String>, Flux<QueryEvent>> events) {
+    start(new QueryRun(runId, userId, conversationId, true), events);
+  }
+
+  @Override
+  public Flux<ServerSentEvent<QueryRunEvent>> attach(final String runId, final String userId, final long lastEventId,
+  final StreamOptions options) {
+
+    final QueryRun run = runs.get(runId);
+    if (run == null || !run.userId.equals(userId)) {
+      return Flux.error(new NotFoundException("Query run not found"));
+    }
+
+    return attach(run, lastEventId, options);
+  }
+
+  @Override
+  public Flux<ServerSentEvent<QueryRunEvent>> watch(final String conversationId, final String userId,
+  final StreamOptions options) {
+
+    // Subscribed to the new runs before getting the one in flight, so none is missed
+    return startedRuns
+      .asFlux()
+      .filter(run -> run.conversationId.equals(conversationId))
+      .mergeWith(Mono.fromSupplier(() -> liveRuns.get(conversationId)))
+      .filter(run -> run.userId.equals(userId))
+      .distinct(run -> run.id)
+      .concatMap(run -> attach(run, -1, options).onErrorResume(e -> Flux.empty()));
+  }
+
+  private Flux<ServerSentEvent<QueryRunEvent>> attach(final QueryRun run, final long lastEventId,
+  final StreamOptions options) {
+
+    final boolean cumulative = isCumulative();
+    Flux<ServerSentEvent<QueryRunEvent>> events = Flux.defer(run::events)
+      .map(runEvent -> ServerSentEvent.builder(runEvent.event())
+        .id(String.valueOf(runEvent.sequence()))
+        .build());
+
+    // Offsets of the deltas count the events the client already has, and start at the snapshot when there is one
+    if (options.isDelta()) {
+      events = PartialAnswerDeltas.toDeltas(events, cumulative);
+    }
+    events = events.filter(event -> Long.parseLong(event.id()) > lastEventId);
+
+    // Fewer, larger frames for the partial answers, unless the client asks otherwise
+    final long interval = options.getCoalesceMs() != null ? options.getCoalesceMs() : coalesceMs;
+    final int maxChars = options.getCoalesceChars() != null ? options.getCoalesceChars() : coalesceChars;
+
+    return (interval > 0
+      ? PartialAnswerCoalescer.coalesce(events, Duration.ofMillis(interval), maxChars, cumulative)
+      : events)
+      .doOnSubscribe(subscription -> {
+        synchronized (run) {
+          run.clients++;
+        }
+      })
+      .doFinally(signal -> detach(run));
+  }
+
+  private boolean isCumulative() {
+    return "cumulative".equals(partialAnswers);
+  }
+
+  @Override
+  public Mono<String> cancel(final String runId, final String userId) {
+
+    final QueryRun run = runs.get(runId);
+    if (run == null || !run.userId.equals(userId)) {
+      return Mono.error(new NotFoundException("Query run not found"));
+    }
+
+    stop(run, "cancelled", "The query was cancelled.");
+    return Mono.just("Query cancelled.");
+  }
+
+  private void start(final QueryRun run, final Function<Mono<String>, Flux<QueryEvent>> events) {
+
+    runs.put(run.id, run);
+    liveRuns.put(run.conversationId, run);
+    synchronized (startedRuns) {
+      startedRuns.tryEmitNext(run);
+    }
+    log.info("Starting query run [{}] for conversation [{}]", run.id, run.conversationId);
+
+    // Not disposed: a stop goes through the events, which end once the question is saved with the error
+    events
+      .apply(run.stop.asMono())
+      .doFinally(signal -> {
+        liveRuns.remove(run.conversationId, run);
+        Mono.delay(Duration.ofSeconds(retentionSeconds)).subscribe(tick -> runs.remove(run.id));
+      })
+      .subscribe(run::emit, run::finish, () -> run.finish(null));
+  }
+
+  /**
+   * Stop the run, closing its processor stream. The stop goes through the events of the query: the question is saved
+   * with the error, then the clients get the final error event.
+   */
+  private void stop(final QueryRun run, final String reason, final String message) {
+
+    synchronized (run) {
+      if (run.finished || run.stopped) return;
+
+      run.stopped = true;
+      run.stop.tryEmitValue(message);
+    }
+
+    log.info("Query run [{}] stopped: {}", run.id, reason);
+    meterRegistry.counter("hermes.query.runs.stopped", "reason", reason).increment();
+  }
+
+  /**
+   * Stop the run if no client comes back before abandon-after-seconds
+   */
+  private void detach(final QueryRun run) {
+
+    synchronized (run) {
+      if (--run.clients > 0 || run.finished || run.background || abandonAfterSeconds < 0) return;
+    }
+
+    Mono.delay(Duration.ofSeconds(abandonAfterSeconds)).subscribe(tick -> {
+
+      synchronized (run) {
+        if (run.clients > 0) return;
+      }
+      stop(run, "abandoned", "The query was abandoned.");
+    });
+  }
+}
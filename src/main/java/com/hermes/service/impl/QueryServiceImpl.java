@@ -0,0 +1,647 @@
+/*
+ * Copyright 2025 Aion Sigma Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hermes.service.impl;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Service;
+
+import com.hermes.data.QueryEvent;
+import com.hermes.data.QueryJobStatus;
+import com.hermes.data.QueryRequest;
+import com.hermes.data.QueryRunEvent;
+import com.hermes.data.QueryStatus;
+import com.hermes.data.StreamOptions;
+import com.hermes.exceptions.NotFoundException;
+import com.hermes.exceptions.TooManyRequestsException;
+import com.hermes.model.Conversation;
+import com.hermes.model.Message;
+import com.hermes.model.QueryJob;
+import com.hermes.service.AnswerCacheService;
+import com.hermes.service.ConversationService;
+import com.hermes.service.MessageService;
+import com.hermes.service.ProcessorPoolService;
+import com.hermes.service.QueryAdmissionService;
+import com.hermes.service.QueryJobService;
+import com.hermes.service.QueryRunService;
+import com.hermes.service.QueryService;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Signal;
+
+@Service
+@Slf4j
+public class QueryServiceImpl implements QueryService {
+
+  private final ConversationService conversationService;
+
+  private final AnswerCacheService answerCacheService;
+
+  private final MessageService messageService;
+
+  private final QueryAdmissionService queryAdmissionService;
+
+  private final QueryRunService queryRunService;
+
+  private final MeterRegistry meterRegistry;
+
+  private final QueryJobService queryJobService;
+
+  private final ProcessorPoolService processorPoolService;
+
+  @Value("${hermes.processor.partial-answers:incremental}")
+  private String partialAnswers;
+
+  @Value("${hermes.query.timeout-seconds:300}")
+  private long timeoutSeconds;
+
+  @Value("${hermes.query.history.max-turns:10}")
+  private int historyMaxTurns;
+
+  @Value("${hermes.query.history.max-tokens:4000}")
+  private int historyMaxTokens;
+
+  /** Time left to the query, in milliseconds, sent to the processor */
+  private static final String TIMEOUT_HEADER = "X-Request-Timeout-Ms";
+
+  /** Queue of the processor streams shared by identical queries, followed by their cache key */
+  private static final String SHARED_QUERY_PREFIX = "shared:";
+
+  /** Roles of the messages sent to the processor: system messages are for the users only */
+  private static final List<String> HISTORY_ROLES = List.of("user", "assistant");
+
+  /** Turns sent to the processor, and whether the conversation has no question yet */
+  private record History(List<Message> window, boolean firstQuestion) {}
+
+  /** Conversation of a query, with the events of its answer (not started), stopped by the stop signal of their run */
+  private record PreparedQuery(Conversation conversation, Function<Mono<String>, Flux<QueryEvent>> events) {}
+
+  /**
+   * Events of a processor stream in flight so far, compacted for the queries joining it: the last event of each step,
+   * the answer so far and the final event. The last event received is sent to the queries already joined. The
+   * positions in the queue are only sent live: a query joining gets the next one, not an outdated one.
+   */
+  private record InFlightEvents(Map<QueryStatus, QueryEvent> steps, String answer, QueryEvent last) {
+
+    private static final InFlightEvents EMPTY = new InFlightEvents(Map.of(), "", null);
+
+    private InFlightEvents add(final QueryEvent event, final boolean cumulative) {
+
+      if (event instanceof QueryEvent.PartialAnswer partial) {
+        final String text = partial.answer() != null ? partial.answer() : "";
+        return new InFlightEvents(steps, cumulative ? text : answer + text, event);
+      }
+      if (event.status().isFinal() || event instanceof QueryEvent.Queued) {
+        return new InFlightEvents(steps, answer, event);
+      }
+
+      final Map<QueryStatus, QueryEvent> added = new LinkedHashMap<>(steps);
+      added.remove(event.status());
+      added.put(event.status(), event);
+      return new InFlightEvents(added, answer, event);
+    }
+
+    private List<QueryEvent> events() {
+
+      final List<QueryEvent> events = new ArrayList<>(steps.values());
+      if (!answer.isEmpty()) {
+        events.add(new QueryEvent.PartialAnswer(answer));
+      }
+      if (last != null && last.status().isFinal()) {
+        events.add(last);
+      }
+      return events;
+    }
+  }
+
+  /** Processor streams in flight, by cache key: identical queries share them */
+  private final Map<String, Flux<InFlightEvents>> inFlightQueries = new ConcurrentHashMap<>();
+
+  public QueryServiceImpl(final ProcessorPoolService processorPoolService, final ConversationService conversationService,
+  final AnswerCacheService answerCacheService, final MessageService messageService,
+  final QueryAdmissionService queryAdmissionService, final QueryRunService queryRunService,
+  final MeterRegistry meterRegistry, final QueryJobService queryJobService) {
+    this.processorPoolService = processorPoolService;
+    this.conversationService = conversationService;
+    this.answerCacheService = answerCacheService;
+    this.messageService = messageService;
+    this.queryAdmissionService = queryAdmissionService;
+    this.queryRunService = queryRunService;
+    this.meterRegistry = meterRegistry;
+    this.queryJobService = queryJobService;
+  }
+
+  @Override
+  public Flux<ServerSentEvent<QueryRunEvent>> handleQuery(final QueryRequest queryRequest, final String userId,
+  final StreamOptions options) throws TooManyRequestsException {
+
+    final IllegalArgumentException invalid = validate(queryRequest);
+    if (invalid != null) {
+      return Flux.error(invalid);
+    }
+
+    // Before the response starts, so a full queue is a 429
+    final QueryAdmissionService.Admission admission = queryAdmissionService.admit(userId);
+
+    return prepareQuery(queryRequest, userId, admission)
+      .doOnError(e -> admission.release())
+      .doOnCancel(admission::release)
+      .flatMapMany(query -> {
+
+        // The run goes on when the client disconnects, and the client can resume it
+        final String runId = queryRunService.start(userId, query.conversation().getId(), query.events());
+        return queryRunService.attach(runId, userId, -1, options);
+      })
+      .onErrorMap(e -> !(e instanceof TooManyRequestsException), this::toClientError);
+  }
+
+  @Override
+  public Mono<QueryJob> submitJob(final QueryRequest queryRequest, final String userId) throws TooManyRequestsException {
+
+    final IllegalArgumentException invalid = validate(queryRequest);
+    if (invalid != null) {
+      return Mono.error(invalid);
+    }
+
+    final QueryAdmissionService.Admission admission = queryAdmissionService.admit(userId);
+
+    return prepareQuery(queryRequest, userId, admission)
+      .flatMap(query -> queryJobService
+        .create(userId, query.conversation().getId(), queryRequest.getQuestion())
+        .doOnNext(job -> queryRunService.startInBackground(job.getId(), userId, query.conversation().getId(),
+          stop -> queryJobService.run(job, query.events().apply(stop)))))
+      .doOnError(e -> admission.release())
+      .doOnCancel(admission::release)
+      .onErrorMap(e -> !(e instanceof TooManyRequestsException), this::toClientError);
+  }
+
+  @Override
+  public Flux<ServerSentEvent<QueryRunEvent>> watchConversation(final String conversationId, final String userId,
+  final StreamOptions options) {
+    return queryRunService.watch(conversationId, userId, options);
+  }
+
+  @Override
+  public Mono<String> cancelQuery(final String runId, final String userId) {
+    return queryRunService.cancel(runId, userId);
+  }
+
+  @Override
+  public Mono<QueryJob> getJob(final String jobId, final String userId) {
+    return queryJobService.getJob(jobId, userId);
+  }
+
+  @Override
+  public Flux<ServerSentEvent<QueryRunEvent>> resumeQuery(final String runId, final String userId, final long lastEventId,
+  final StreamOptions options) {
+
+    // Runs are in memory: once gone, a finished job still has its answer
+    return queryRunService
+      .attach(runId, userId, lastEventId, options)
+      .onErrorResume(NotFoundException.class, e -> queryJobService
+        .getJob(runId, userId)
+        .filter(job -> job.getStatus() == QueryJobStatus.COMPLETED || job.getStatus() == QueryJobStatus.ERROR)
+        .switchIfEmpty(Mono.error(e))
+        .map(job -> ServerSentEvent.builder(new QueryRunEvent(job.getConversationId(), job.getId(), queryJobService.toEvent(job)))
+          .build()));
+  }
+
+  /**
+   * Validate request parameters, returning the error if any
+   */
+  private IllegalArgumentException validate(final QueryRequest queryRequest) {
+
+    if (queryRequest.getQuestion() == null || queryRequest.getQuestion().isEmpty()) {
+      log.warn("Request validation failed: question is required");
+      return new IllegalArgumentException("Question is required.");
+    }
+
+    if (queryRequest.getIndexes() == null || queryRequest.getIndexes().size() == 0) {
+      log.warn("Empty indexes received.");
+    }
+    return null;
+  }
+
+  /**
+   * Get the conversation of the query, with the events of its answer to run. The admission is given back if the
+   * query fails before its events run, and by the events when they don't need the processor.
+   */
+  private Mono<PreparedQuery> prepareQuery(final QueryRequest queryRequest, final String userId,
+  final QueryAdmissionService.Admission admission) {
+
+    final QueryTimeline timeline = new QueryTimeline();
+
+    // Deadline of the query, from the reception of the request
+    final long maxTimeoutMs = timeoutSeconds * 1000,
+    deadline = System.currentTimeMillis() + (queryRequest.getTimeoutMs() != null && queryRequest.getTimeoutMs() > 0
+      ? Math.min(queryRequest.getTimeoutMs(), maxTimeoutMs) : maxTimeoutMs);
+
+    final boolean newConversation = queryRequest.getConversationId() == null || queryRequest.getConversationId().isEmpty();
+    final Mono<Conversation> conversationMono = newConversation
+      ? conversationService.createNewConversation(userId, queryRequest.getIndexes())
+      : conversationService.getConversationHeader(queryRequest.getConversationId());
+
+    return conversationMono
+      .switchIfEmpty(Mono.error(new IllegalArgumentException("Conversation not found")))
+      .doOnNext(conversation -> timeline.mark("conversation_loaded"))
+      .flatMap(conversation -> {
+
+        if(!conversation.getUserId().equals(userId)) {
+          log.warn("Unauthorized access: User {} is not authorized to access conversation {}", userId, conversation.getId());
+          return Mono.error(new IllegalArgumentException("Unauthorized access"));
+        }
+
+        final Function<Mono<String>, Flux<QueryEvent>> events = stop -> (newConversation
+          ? Mono.just(new History(List.of(), true))
+          : getHistory(conversation))
+          .flatMapMany(loaded -> {
+
+            final List<Message> history = loaded.window();
+            timeline.mark("history_loaded");
+            timeline.setSizes(conversation.getCollections() != null ? conversation.getCollections().size() : 0, history.size());
+
+            // Answers depend on the previous turns: only the first question of a conversation is cached
+            final Mono<String> cacheKeyMono = loaded.firstQuestion()
+              ? answerCacheService.getKey(queryRequest.getQuestion(), conversation.getCollections())
+              : Mono.empty();
+
+            return cacheKeyMono
+              .map(Optional::of)
+              .defaultIfEmpty(Optional.empty())
+              .flatMapMany(cacheKey -> {
+
+                final List<QueryEvent> cachedEvents = cacheKey.map(answerCacheService::get).orElse(null);
+                if (cachedEvents != null) {
+                  log.info("Answer found in cache for conversation [{}]", conversation.getId());
+                  admission.release();
+                  return Flux.fromIterable(cachedEvents)
+                    .concatMap(event -> handleEvent(conversation, queryRequest.getQuestion(), event, timeline));
+                }
+
+                return callProcessor(conversation, history, queryRequest.getQuestion(), userId, cacheKey.orElse(null), timeline,
+                  deadline, stop, admission);
+              });
+          })
+          .doFinally(signal -> {
+            admission.release();
+            timeline.publish(meterRegistry);
+          });
+
+        return Mono.just(new PreparedQuery(conversation, events));
+      });
+  }
+
+  private Throwable toClientError(final Throwable e) {
+    log.error("Error processing request: {}", e.getMessage());
+    return new IllegalArgumentException("Encountered an error while processing request.");
+  }
+
+  /**
+   * Get the processor events of the question. Queries with a cache key are coalesced: while one is in flight,
+   * identical queries subscribe to its stream instead of calling the processor again. Each conversation still
+   * saves its own answer.
+   *
+   * <p>The shared stream belongs to none of the queries: it takes its own place in the queue (under its cache key,
+   * so it waits its turn like one more user) and runs until the processor timeout, or until no query listens to it.
+   * Each query gives its own place back, and applies its own deadline and timeline to the events it receives.
+   */
+  private Flux<QueryEvent> callProcessor(final Conversation conversation, final List<Message> history,
+  final String question, final String userId, final String cacheKey, final QueryTimeline timeline, final long deadline,
+  final Mono<String> stop, final QueryAdmissionService.Admission admission) {
+
+    if (cacheKey == null) {
+      return processorStream(conversation, history, question, userId, null, deadline, admission)
+        .transform(events -> withDeadline(events, deadline, stop))
+        .doOnNext(event -> markEvent(timeline, event))
+        .concatMap(event -> handleEvent(conversation, question, event, timeline));
+    }
+
+    final boolean cumulative = "cumulative".equals(partialAnswers);
+    final boolean[] created = { false };
+    final Flux<InFlightEvents> shared = inFlightQueries.computeIfAbsent(cacheKey, key -> {
+
+      created[0] = true;
+      final AtomicReference<Flux<InFlightEvents>> stream = new AtomicReference<>();
+      stream.set(sharedProcessorStream(conversation, history, question, userId, key)
+        .scan(InFlightEvents.EMPTY, (events, event) -> events.add(event, cumulative))
+        .skip(1)
+        .doFinally(signal -> inFlightQueries.remove(key, stream.get()))
+        .replay(1) // Late subscribers get the events so far, compacted
+        .refCount());
+      return stream.get();
+    });
+
+    if (!created[0]) {
+      log.info("Joining the query in flight for conversation [{}]", conversation.getId());
+    }
+    admission.release();
+
+    // The first events received are the ones so far, then each new one
+    final Flux<QueryEvent> joined = Flux.defer(() -> {
+
+      final boolean[] first = { true };
+      return shared.concatMapIterable(events -> {
+        if (!first[0]) return List.of(events.last());
+        first[0] = false;
+        return events.events();
+      });
+    });
+
+    return joined
+      .transform(events -> withDeadline(events, deadline, stop))
+      .doOnNext(event -> markEvent(timeline, event))
+      .concatMap(event -> handleEvent(conversation, question, event, timeline));
+  }
+
+  /**
+   * Processor stream shared by identical queries, with its own place in the queue and the processor timeout
+   */
+  private Flux<QueryEvent> sharedProcessorStream(final Conversation conversation, final List<Message> history,
+  final String question, final String userId, final String cacheKey) {
+
+    return Flux.defer(() -> {
+
+      final QueryAdmissionService.Admission admission;
+      try {
+        admission = queryAdmissionService.admit(SHARED_QUERY_PREFIX + cacheKey);
+      }
+      catch (final TooManyRequestsException e) {
+        return Flux.error(e);
+      }
+      return processorStream(conversation, history, question, userId, cacheKey,
+        System.currentTimeMillis() + timeoutSeconds * 1000L, admission);
+    });
+  }
+
+  /**
+   * Mark the stage of an event in the timeline of the query: the first event past the queue means it's connected
+   */
+  private void markEvent(final QueryTimeline timeline, final QueryEvent event) {
+
+    if (!(event instanceof QueryEvent.Queued)) {
+      timeline.mark("processor_connected");
+    }
+    timeline.mark(event);
+  }
+
+  /**
+   * Call Python Processor (Streaming Response)
+   */
+  private Flux<QueryEvent> processorStream(final Conversation conversation, final List<Message> history,
+  final String question, final String userId, final String cacheKey, final long deadline,
+  final QueryAdmissionService.Admission admission) {
+
+    // Prepare payload for Python Processor
+    final Map<String, Object> processorPayload = new HashMap<>();
+    processorPayload.put("conversationId", conversation.getId());
+    processorPayload.put("userId", userId);
+    processorPayload.put("history", history);
+    processorPayload.put("newQuestion", question);
+    processorPayload.put("indexes", conversation.getCollections());
+
+    log.info("Sending request to processor for conversation [{}]", conversation.getId());
+
+    // Events to cache: everything but the partial answers
+    final List<QueryEvent> answerEvents = new ArrayList<>();
+
+    return admission
+      .run(() -> processorPoolService.route(client -> client
+        .post()
+        .uri("/processor/query")
+        .header(TIMEOUT_HEADER, String.valueOf(Math.max(deadline - System.currentTimeMillis(), 0)))
+        .bodyValue(processorPayload)
+        .exchangeToFlux(response -> response.statusCode().isError()
+          ? response.<QueryEvent>createError().flux()
+          : response.bodyToFlux(QueryEvent.class))  // Process JSON stream
+        .transform(this::withFullAnswer)))
+      .doOnNext(event -> handleStatusUpdate(conversation.getId(), event))
+      .doOnNext(event -> {
+
+        if (cacheKey == null || event instanceof QueryEvent.Queued || event instanceof QueryEvent.PartialAnswer) return;
+
+        answerEvents.add(event);
+        if (event instanceof QueryEvent.Completed) {
+          answerCacheService.put(cacheKey, answerEvents);
+        }
+      });
+  }
+
+  /**
+   * Complete the final answer from the partial ones when the processor doesn't send it
+   */
+  private Flux<QueryEvent> withFullAnswer(final Flux<QueryEvent> events) {
+
+    return Flux.defer(() -> {
+
+      final boolean cumulative = "cumulative".equals(partialAnswers);
+      final StringBuilder answer = new StringBuilder();
+
+      return events.map(event -> {
+
+        if (event instanceof QueryEvent.PartialAnswer partial && partial.answer() != null) {
+          if (cumulative) answer.setLength(0);
+          answer.append(partial.answer());
+        }
+        else if (event instanceof QueryEvent.Completed completed && (completed.answer() == null || completed.answer().isEmpty())) {
+          return new QueryEvent.Completed(answer.toString(), completed.rephrasedQuestion(), completed.references(),
+            completed.fields());
+        }
+        return event;
+      });
+    });
+  }
+
+  /**
+   * Stop the query at its deadline, or when its run is stopped (cancelled or abandoned): the processor connection
+   * is closed, and the query ends with an error event, saved like the other errors
+   */
+  private Flux<QueryEvent> withDeadline(final Flux<QueryEvent> events, final long deadline, final Mono<String> stop) {
+
+    final Flux<QueryEvent> timed = events
+      .timeout(untilDeadline(deadline), event -> untilDeadline(deadline))
+      .onErrorResume(TimeoutException.class, e -> {
+        meterRegistry.counter("hermes.query.runs.stopped", "reason", "timed_out").increment();
+        return Flux.just(new QueryEvent.Failed("The query took too long to answer."));
+      });
+
+    // Signals, so that the end of the events also ends the wait for the stop
+    return Flux
+      .merge(timed.materialize(), stop.map(message -> Signal.<QueryEvent>next(new QueryEvent.Failed(message))))
+      .takeUntil(signal -> !signal.isOnNext() || signal.get().status().isFinal())
+      .<QueryEvent>dematerialize();
+  }
+
+  private Mono<Long> untilDeadline(final long deadline) {
+    return Mono.delay(Duration.ofMillis(Math.max(deadline - System.currentTimeMillis(), 0)));
+  }
+
+  /**
+   * Forward an event to the client, saving the answer once the query is over
+   */
+  private Flux<QueryEvent> handleEvent(final Conversation conversation, final String question, final QueryEvent event,
+  final QueryTimeline timeline) {
+
+    if (event.status().isFinal()) {
+
+      final QueryEvent.Completed completed = event instanceof QueryEvent.Completed ? (QueryEvent.Completed) event : null;
+      final String finalAnswer = completed != null ? completed.answer() : "Error processing request.",
+      rephrasedQuestion = completed != null ? completed.rephrasedQuestion() : "";
+
+      return conversationService
+        .updateConversationWithAnswer(conversation.getId(), question, rephrasedQuestion, finalAnswer)
+        .doOnSuccess(saved -> timeline.mark("persisted"))
+        .thenMany(Flux.just(event));
+    }
+
+    return Flux.just(event);
+  }
+
+  /**
+   * Get the last turns of the conversation sent to the processor: at most max-turns questions and answers,
+   * within the token budget. The payload doesn't grow with the length of the conversation.
+   */
+  private Mono<History> getHistory(final Conversation conversation) {
+
+    return messageService
+      .getLastMessages(conversation.getId(), HISTORY_ROLES, historyMaxTurns * 2)
+      .collectList()
+      .map(messages -> new History(toWindow(messages), messages.isEmpty()));
+  }
+
+  /**
+   * Keep the last turn, truncated to the token budget if needed, then the previous turns that fit whole.
+   * A window never starts with an answer without its question.
+   */
+  private List<Message> toWindow(final List<Message> messages) {
+
+    if (messages.isEmpty()) {
+      return messages;
+    }
+
+    int start = messages.size() - 1;
+    while (start > 0 && !"user".equals(messages.get(start).getRole())) {
+      start--;
+    }
+    if (!"user".equals(messages.get(start).getRole())) {
+      start = messages.size() - 1; // Answers without question: only the last one
+    }
+
+    final List<Message> lastTurn = new ArrayList<>(messages.subList(start, messages.size()));
+    int tokens = tokens(lastTurn);
+    if (tokens > historyMaxTokens) {
+
+      // Each message gets its share of the budget, the shares left by the short ones go to the long ones
+      int budget = historyMaxTokens, remaining = lastTurn.size();
+      final List<Integer> order = new ArrayList<>();
+      for (int i = 0; i < lastTurn.size(); i++) order.add(i);
+      order.sort(Comparator.comparingInt(i -> tokens(lastTurn.get(i))));
+
+      for (final int i: order) {
+        final int share = budget / remaining--;
+        lastTurn.set(i, truncate(lastTurn.get(i), share));
+        budget -= tokens(lastTurn.get(i));
+      }
+      tokens = tokens(lastTurn);
+    }
+
+    while (start > 0) {
+
+      int previous = start - 1;
+      while (previous > 0 && !"user".equals(messages.get(previous).getRole())) {
+        previous--;
+      }
+
+      final List<Message> turn = messages.subList(previous, start);
+      if (!"user".equals(turn.get(0).getRole()) || tokens + tokens(turn) > historyMaxTokens) break;
+
+      tokens += tokens(turn);
+      start = previous;
+    }
+
+    final List<Message> window = new ArrayList<>(messages.subList(start, messages.size() - lastTurn.size()));
+    window.addAll(lastTurn);
+    return window;
+  }
+
+  private int tokens(final List<Message> messages) {
+    return messages.stream().mapToInt(this::tokens).sum();
+  }
+
+  private int tokens(final Message message) {
+    return message.getTokenCount() > 0 ? message.getTokenCount() : Utils.estimateTokens(message.getContent());
+  }
+
+  /**
+   * Copy of the message, its content cut to the tokens
+   */
+  private Message truncate(final Message message, final int maxTokens) {
+
+    if (message.getContent() == null || tokens(message) <= maxTokens) {
+      return message;
+    }
+
+    final String content = message.getContent();
+    final int length = Math.min(content.length(), Math.max(maxTokens, 0) * 4);
+    return new Message(message.getRole(), content.substring(0, length) + "...", message.getRephrased())
+      .setId(message.getId())
+      .setSequence(message.getSequence())
+      .setTimestamp(message.getTimestamp())
+      .setTokenCount(Utils.estimateTokens(content.substring(0, length)));
+  }
+
+  private void handleStatusUpdate(final String conversationId, final QueryEvent update) {
+
+    // Partial answers are not logged
+    if (update instanceof QueryEvent.PartialAnswer) return;
+
+    String result = "[" + conversationId + "]:";
+    if (update instanceof QueryEvent.Queued queued) {
+      result += "Waiting for the processor, position " + queued.position();
+    }
+    else if (update instanceof QueryEvent.Completed completed) {
+      result += "Final answer: " + completed.answer() + "References: " + completed.references();
+    }
+    else if (update instanceof QueryEvent.Failed failed) {
+      result += "Error: " + failed.message();
+    }
+    else if (update instanceof QueryEvent.Progress progress) {
+      switch (progress.status()) {
+        case STARTED: result += "Processing started..."; break;
+        case REPHRASED: result += "Rephrased question: " + progress.rephrasedQuestion(); break;
+        case RETRIEVING_INDEX: result += "Downloading collection of documents..."; break;
+        case SEARCHING: result += "Searching for relevant documents..."; break;
+        default: result += "Unknown status: " + progress.status();
+      }
+    }
+    log.info(result);
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2025 Aion Sigma Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hermes.service.impl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.hermes.data.QueryEvent;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Timeline of a query: the time from the reception of the request to each stage, published once the query is over
+ * as the hermes.query.stage timer, tagged with the stage and the sizes of the query.
+ */
+class QueryTimeline {
+
+  private final long start = System.nanoTime();
+
+  /** Time to each stage reached (nanoseconds), in order */
+  private final Map<String, Long> stages = new LinkedHashMap<>();
+
+  private int collectionCount;
+
+  private int historyLength;
+
+  synchronized void mark(final String stage) {
+    stages.putIfAbsent(stage, System.nanoTime() - start);
+  }
+
+  /** Mark the stage of a processor event, the first one for the partial answers */
+  void mark(final QueryEvent event) {
+
+    switch (event.status()) {
+      case QUEUED, UNKNOWN: break;
+      case PARTIAL_ANSWER: mark("first_partial_answer"); break;
+      default: mark(event.status().name().toLowerCase());
+    }
+  }
+
+  synchronized void setSizes(final int collectionCount, final int historyLength) {
+    this.collectionCount = collectionCount;
+    this.historyLength = historyLength;
+  }
+
+  synchronized void publish(final MeterRegistry meterRegistry) {
+
+    final String collections = bucket(collectionCount), history = bucket(historyLength);
+    stages.forEach((stage, nanos) -> Timer.builder("hermes.query.stage")
+      .description("Time from the reception of the query to the stage")
+      .tag("stage", stage)
+      .tag("collections", collections)
+      .tag("history", history)
+      .publishPercentiles(0.5, 0.95, 0.99)
+      .register(meterRegistry)
+      .record(nanos, TimeUnit.NANOSECONDS));
+  }
+
+  /**
+   * Few tag values, to keep the number of timers low
+   */
+  private static String bucket(final int size) {
+
+    if (size <= 1) return String.valueOf(size);
+    if (size <= 5) return "2-5";
+    if (size <= 20) return "6-20";
+    return "21+";
+  }
+}
@@ -15,11 +15,15 @@
  */
 package com.hermes.service.impl;
 
+import java.time.Duration;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.threeten.bp.OffsetDateTime;
 
+import io.grpc.Status;
+import reactor.util.retry.Retry;
+
 public class Utils {
   
   public static boolean isValidEmail(String email) {
@@ -36,8 +40,26 @@ public class Utils {
     return matcher.matches();
   }
 
+  /** Estimated number of LLM tokens of a text (about 4 characters per token) */
+  public static int estimateTokens(final String text) {
+    return text == null ? 0 : (text.length() + 3) / 4;
+  }
+
   /** Timestamp in second */
   public static Long getTimestamp() {
     return OffsetDateTime.now().toEpochSecond();
   }
+
+  /** Firestore transaction aborted by a concurrent write of the same documents */
+  public static boolean isAborted(final Throwable error) {
+    return Status.fromThrowable(error).getCode() == Status.Code.ABORTED;
+  }
+
+  /** Retry of the aborted Firestore transactions, on the documents written meanwhile */
+  public static Retry retryAborted(final int maxRetries) {
+
+    return Retry.backoff(maxRetries, Duration.ofMillis(50))
+      .filter(Utils::isAborted)
+      .onRetryExhaustedThrow((spec, signal) -> signal.failure());
+  }
 }
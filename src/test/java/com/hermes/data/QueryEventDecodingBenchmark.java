@@ -0,0 +1,99 @@
+/*
+ * Copyright 2025 Aion Sigma Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hermes.data;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+/**
+ * Decoding of the processor events: into maps, as before the typed events, through a token buffer, then directly
+ * into the events with QueryEventDeserializer.
+ *
+ * <p>Run with: mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/classpath.txt, then
+ * java -cp target/test-classes:target/classes:$(cat target/classpath.txt) org.openjdk.jmh.Main QueryEventDecodingBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryEventDecodingBenchmark {
+
+  private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<>() {};
+
+  private static final Map<String, String> EVENTS = Map.of(
+    "partial", "{\"status\":\"partial_answer\",\"answer\":\"The quarterly report shows an increase of the \"}",
+    "completed", "{\"status\":\"completed\",\"answer\":\"The quarterly report shows an increase of the revenue.\","
+      + "\"rephrasedQuestion\":\"What does the quarterly report show?\",\"conversationId\":\"c1\",\"userId\":\"u1\","
+      + "\"references\":[{\"file\":\"report.pdf\",\"page\":3,\"score\":0.92},"
+      + "{\"file\":\"summary.docx\",\"page\":1,\"score\":0.87}]}");
+
+  @Param({ "partial", "completed" })
+  private String event;
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  private byte[] json;
+
+  @Setup
+  public void setup() {
+    json = EVENTS.get(event).getBytes(StandardCharsets.UTF_8);
+  }
+
+  /** Map per event, its status uppercased at each step of the stream */
+  @Benchmark
+  public void map(final Blackhole blackhole) throws IOException {
+
+    final Map<String, Object> decoded = objectMapper.readValue(json, MAP_TYPE);
+    for (int step = 0; step < 3; step++) {
+      blackhole.consume(((String) decoded.get("status")).toUpperCase());
+    }
+    blackhole.consume(decoded);
+  }
+
+  /** Token buffer per event, then read into the event */
+  @Benchmark
+  public QueryEvent tokenBuffer() throws IOException {
+
+    final TokenBuffer tokens = objectMapper.readValue(json, TokenBuffer.class);
+    return objectMapper.readValue(tokens.asParser(objectMapper), QueryEvent.class);
+  }
+
+  @Benchmark
+  public QueryEvent direct() throws IOException {
+    return objectMapper.readValue(json, QueryEvent.class);
+  }
+}